@@ -0,0 +1,125 @@
+package com.tritva.Evently.client;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Consecutive-failure circuit breaker. After {@code failureThreshold} failures
+ * in a row it opens and rejects calls for {@code openMillis}; then a single
+ * probe is let through (half-open). The probe's result closes or re-opens it.
+ * Each admitted call holds a permit and reports its outcome with it, so a slow
+ * call that started before the circuit opened cannot close it or free the probe slot.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    // Proof of admission; only the current probe's permit can close a half-open circuit
+    public static final class Permit {
+        private final boolean probe;
+
+        private Permit(boolean probe) {
+            this.probe = probe;
+        }
+    }
+
+    // Calls let through while closed are interchangeable
+    private static final Permit CLOSED_PERMIT = new Permit(false);
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicReference<Permit> probe = new AtomicReference<>();
+    private volatile long openedAt;
+
+    public CircuitBreaker(String name, int failureThreshold, long openMillis) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    // A permit if the call may go ahead, null if not; the caller must then report the outcome with it
+    public Permit tryAcquire() {
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return CLOSED_PERMIT;
+        }
+        if (current == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                return null;
+            }
+            state.compareAndSet(State.OPEN, State.HALF_OPEN);
+        }
+        // Half-open: exactly one probe at a time
+        Permit permit = new Permit(true);
+        return probe.compareAndSet(null, permit) ? permit : null;
+    }
+
+    public void onSuccess(Permit permit) {
+        if (!permit.probe) {
+            // Calls that started before the circuit opened say nothing about upstream now
+            if (state.get() == State.CLOSED) {
+                consecutiveFailures.set(0);
+            }
+            return;
+        }
+        if (probe.get() == permit) {
+            consecutiveFailures.set(0);
+            state.set(State.CLOSED);
+            probe.compareAndSet(permit, null);
+            log.info("Circuit {} closed", name);
+        }
+    }
+
+    public void onFailure(Permit permit) {
+        if (!permit.probe) {
+            if (consecutiveFailures.incrementAndGet() >= failureThreshold && state.get() == State.CLOSED) {
+                trip();
+            }
+            return;
+        }
+        // Re-opened before the slot is freed, so no second probe slips in
+        if (probe.get() == permit) {
+            trip();
+            probe.compareAndSet(permit, null);
+        }
+    }
+
+    // The call was let through but ended in a way that says nothing about upstream health
+    public void onIgnored(Permit permit) {
+        if (permit.probe) {
+            probe.compareAndSet(permit, null);
+        }
+    }
+
+    // Open and still inside the wait, so any call now would be refused
+    public boolean isRejecting() {
+        return state.get() == State.OPEN && System.nanoTime() - openedAt < openNanos;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    // Seconds until a probe will be allowed, for Retry-After
+    public long secondsUntilProbe() {
+        long remaining = openNanos - (System.nanoTime() - openedAt);
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining) + 1);
+    }
+
+    private void trip() {
+        openedAt = System.nanoTime();
+        if (state.getAndSet(State.OPEN) != State.OPEN) {
+            log.warn("Circuit {} opened after {} consecutive failure(s)", name, consecutiveFailures.get());
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.tritva.Evently.client;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tritva.Evently.config.MpesaConfig;
+import com.tritva.Evently.exception.PaymentsUnavailableException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * HTTP calls to the Safaricom Daraja API. Responses come back as JSON trees;
+ * non-2xx statuses surface as {@link HttpStatusCodeException} and timeouts or
+ * connection failures as {@link ResourceAccessException}.
+ *
+ * <p>Calls pass through a bulkhead that caps how many threads can be blocked
+ * on Daraja, and a circuit breaker that stops calling it after repeated
+ * timeouts or 5xx responses. Either one turns callers away with
+ * {@link PaymentsUnavailableException} instead of letting them queue.
+ *
+ * <p>Metrics: {@code daraja.client.requests} (timer by operation and outcome),
+ * {@code daraja.client.in.flight} (requests awaiting a response),
+ * {@code daraja.circuit.state} (0 closed, 1 half-open, 2 open),
+ * {@code daraja.bulkhead.available} and {@code daraja.client.rejections}
+ * (by reason).
+ */
+@Component
+@Slf4j
+public class DarajaClient {
+
+    private final RestClient restClient;
+    private final MpesaConfig mpesaConfig;
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Semaphore bulkhead;
+    private final CircuitBreaker circuitBreaker;
+
+    public DarajaClient(@Qualifier("darajaRestClient") RestClient restClient,
+                        MpesaConfig mpesaConfig,
+                        MeterRegistry meterRegistry) {
+        this.restClient = restClient;
+        this.mpesaConfig = mpesaConfig;
+        this.meterRegistry = meterRegistry;
+
+        this.bulkhead = new Semaphore(mpesaConfig.getBulkheadMaxConcurrent());
+        this.circuitBreaker = new CircuitBreaker("daraja",
+                mpesaConfig.getCircuitFailureThreshold(), mpesaConfig.getCircuitOpenMs());
+
+        Gauge.builder("daraja.client.in.flight", inFlight, AtomicInteger::get)
+                .description("Daraja requests waiting on a response")
+                .register(meterRegistry);
+        Gauge.builder("daraja.circuit.state", circuitBreaker, breaker -> switch (breaker.getState()) {
+                    case CLOSED -> 0;
+                    case HALF_OPEN -> 1;
+                    case OPEN -> 2;
+                })
+                .description("Daraja circuit breaker: 0 closed, 1 half-open, 2 open")
+                .register(meterRegistry);
+        Gauge.builder("daraja.bulkhead.available", bulkhead, Semaphore::availablePermits)
+                .description("Free Daraja bulkhead slots")
+                .register(meterRegistry);
+    }
+
+    public CircuitBreaker.State circuitState() {
+        return circuitBreaker.getState();
+    }
+
+    // Fails fast while the circuit is open, before callers do work they would have to undo
+    public void ensureAvailable() {
+        if (circuitBreaker.isRejecting()) {
+            throw reject("circuit_open", circuitBreaker.secondsUntilProbe());
+        }
+    }
+
+    // OAuth client-credentials token; the response carries access_token and expires_in
+    public JsonNode generateToken(String consumerKey, String consumerSecret) {
+        String auth = consumerKey + ":" + consumerSecret;
+        String encodedAuth = Base64.getEncoder().encodeToString(auth.getBytes(StandardCharsets.UTF_8));
+
+        return call("oauth", () -> restClient.get()
+                .uri(mpesaConfig.getOauthUrl() + "/oauth/v1/generate?grant_type=client_credentials")
+                .header(HttpHeaders.AUTHORIZATION, "Basic " + encodedAuth)
+                .retrieve()
+                .body(String.class));
+    }
+
+    // Lipa na M-Pesa Online (STK push) request
+    public JsonNode stkPush(String accessToken, Map<String, Object> requestBody) {
+        return call("stk_push", () -> restClient.post()
+                .uri(mpesaConfig.getApiUrl() + "/mpesa/stkpush/v1/processrequest")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(requestBody)
+                .retrieve()
+                .body(String.class));
+    }
+
+    // Status of an earlier STK push; HTTP 500 while the buyer has not answered yet
+    public JsonNode stkQuery(String accessToken, Map<String, Object> requestBody) {
+        return call("stk_query", () -> restClient.post()
+                .uri(mpesaConfig.getApiUrl() + "/mpesa/stkpushquery/v1/query")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(requestBody)
+                .retrieve()
+                .body(String.class));
+    }
+
+    private JsonNode call(String operation, Supplier<String> request) {
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (permit == null) {
+            throw reject("circuit_open", circuitBreaker.secondsUntilProbe());
+        }
+        if (!acquireBulkhead()) {
+            // Not a verdict on Daraja, so a half-open probe slot must be handed back
+            circuitBreaker.onIgnored(permit);
+            throw reject("bulkhead_full", 1);
+        }
+        try {
+            JsonNode response = timed(operation, request);
+            circuitBreaker.onSuccess(permit);
+            return response;
+        } catch (HttpStatusCodeException e) {
+            if (e.getStatusCode().is4xxClientError()) {
+                // Daraja answered; the request was at fault
+                circuitBreaker.onSuccess(permit);
+            } else if ("stk_query".equals(operation)) {
+                // STK Query answers 500 while the buyer has not responded yet
+                circuitBreaker.onIgnored(permit);
+            } else {
+                circuitBreaker.onFailure(permit);
+            }
+            throw e;
+        } catch (ResourceAccessException e) {
+            circuitBreaker.onFailure(permit);
+            throw e;
+        } catch (RuntimeException e) {
+            circuitBreaker.onIgnored(permit);
+            throw e;
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    private boolean acquireBulkhead() {
+        try {
+            return bulkhead.tryAcquire(mpesaConfig.getBulkheadMaxWaitMs(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private PaymentsUnavailableException reject(String reason, long retryAfterSeconds) {
+        meterRegistry.counter("daraja.client.rejections", "reason", reason).increment();
+        return new PaymentsUnavailableException(
+                "Payments are temporarily unavailable. Please try again shortly.", retryAfterSeconds);
+    }
+
+    private JsonNode timed(String operation, Supplier<String> request) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        inFlight.incrementAndGet();
+        String outcome = "SUCCESS";
+        try {
+            return objectMapper.readTree(request.get());
+        } catch (HttpStatusCodeException e) {
+            outcome = e.getStatusCode().is4xxClientError() ? "CLIENT_ERROR" : "SERVER_ERROR";
+            throw e;
+        } catch (ResourceAccessException e) {
+            outcome = "IO_ERROR";
+            throw e;
+        } catch (JsonProcessingException e) {
+            outcome = "INVALID_RESPONSE";
+            throw new RestClientException("Unreadable Daraja " + operation + " response", e);
+        } catch (RuntimeException e) {
+            outcome = "ERROR";
+            throw e;
+        } finally {
+            inFlight.decrementAndGet();
+            sample.stop(Timer.builder("daraja.client.requests")
+                    .description("Daraja API calls")
+                    .tag("operation", operation)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
+}
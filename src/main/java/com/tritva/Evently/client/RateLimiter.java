@@ -0,0 +1,47 @@
+package com.tritva.Evently.client;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket kept as a single "next free slot" time (GCRA). Up to
+ * {@code burst} permits are handed out at once; after that one permit becomes
+ * available every {@code 1 / permitsPerSecond}. Callers reserve a slot and
+ * sleep until it comes, so waiters are served in arrival order.
+ */
+public class RateLimiter {
+
+    private final long intervalNanos;
+    private final long burstToleranceNanos;
+
+    // When the next permit is due if the bucket were empty; guarded by this
+    private long nextFreeAt;
+
+    public RateLimiter(double permitsPerSecond, int burst) {
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.burstToleranceNanos = (Math.max(1, burst) - 1) * intervalNanos;
+        this.nextFreeAt = System.nanoTime();
+    }
+
+    // How long a reservation made now would wait; zero while burst permits remain
+    public synchronized long projectedWaitNanos() {
+        long now = System.nanoTime();
+        long due = nextFreeAt - now < 0 ? now : nextFreeAt;
+        return Math.max(0, due - burstToleranceNanos - now);
+    }
+
+    /**
+     * Reserves a permit if one is due within {@code maxWaitNanos}.
+     *
+     * @return nanoseconds to wait before using the permit, or -1 if none is due in time
+     */
+    public synchronized long reserve(long maxWaitNanos) {
+        long now = System.nanoTime();
+        long due = nextFreeAt - now < 0 ? now : nextFreeAt;
+        long wait = Math.max(0, due - burstToleranceNanos - now);
+        if (wait > maxWaitNanos) {
+            return -1;
+        }
+        nextFreeAt = due + intervalNanos;
+        return wait;
+    }
+}
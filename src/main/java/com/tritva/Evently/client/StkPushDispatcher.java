@@ -0,0 +1,119 @@
+package com.tritva.Evently.client;
+
+import com.tritva.Evently.config.MpesaConfig;
+import com.tritva.Evently.exception.PaymentsUnavailableException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Paces STK pushes to each paybill shortcode's transaction rate and spreads
+ * them over the configured shortcodes. Each push goes to the shortcode whose
+ * next rate limit slot comes soonest (fewest waiters on a tie). Pushes over
+ * the combined rate wait their turn for up to {@code stk-push-max-wait-ms}
+ * instead of hitting Daraja and failing; anything that would wait longer is
+ * turned away with {@link PaymentsUnavailableException}. The wait limit also
+ * bounds the queue to about {@code rate x max wait} callers per shortcode.
+ *
+ * <p>Slots are tracked in memory, so every app instance has its own limiter.
+ * With {@code mpesa.node-count} instances each one takes an equal share of a
+ * shortcode's rate and burst; without it N instances would together send N
+ * times the rate Safaricom allows. The share is static: while some instances
+ * are down the survivors do not pick up their slots.
+ *
+ * <p>Metrics, tagged by shortcode: {@code daraja.stk.queue.depth} (callers
+ * waiting for a slot) and {@code daraja.stk.queue.wait} (time spent waiting).
+ */
+@Component
+@Slf4j
+public class StkPushDispatcher {
+
+    private final List<Lane> lanes = new ArrayList<>();
+    private final MeterRegistry meterRegistry;
+    private final long maxWaitNanos;
+
+    // One shortcode's rate budget
+    private static class Lane {
+        private final MpesaConfig.ShortCode shortCode;
+        private final RateLimiter rateLimiter;
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final Timer waitTimer;
+
+        private Lane(MpesaConfig.ShortCode shortCode, int nodeCount, MeterRegistry meterRegistry) {
+            this.shortCode = shortCode;
+            this.rateLimiter = new RateLimiter(shortCode.getStkPushPerSecond() / nodeCount,
+                    Math.max(1, shortCode.getStkPushBurst() / nodeCount));
+            Gauge.builder("daraja.stk.queue.depth", waiting, AtomicInteger::get)
+                    .description("STK pushes waiting for a rate limit slot")
+                    .tag("shortcode", shortCode.getShortCode())
+                    .register(meterRegistry);
+            this.waitTimer = Timer.builder("daraja.stk.queue.wait")
+                    .description("Time STK pushes spent waiting for a rate limit slot")
+                    .tag("shortcode", shortCode.getShortCode())
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(meterRegistry);
+        }
+    }
+
+    private record Candidate(Lane lane, long projectedWaitNanos, int waiting) {
+    }
+
+    public StkPushDispatcher(MpesaConfig mpesaConfig, MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(mpesaConfig.getStkPushMaxWaitMs());
+        int nodeCount = Math.max(1, mpesaConfig.getNodeCount());
+        for (MpesaConfig.ShortCode shortCode : mpesaConfig.resolvedShortCodes()) {
+            lanes.add(new Lane(shortCode, nodeCount, meterRegistry));
+        }
+    }
+
+    // Runs the push on the least loaded shortcode once its rate allows
+    public <T> T dispatch(Function<MpesaConfig.ShortCode, T> push) {
+        // Load is read once up front; it keeps moving while we sort
+        List<Candidate> candidates = new ArrayList<>(lanes.size());
+        for (Lane lane : lanes) {
+            candidates.add(new Candidate(lane, lane.rateLimiter.projectedWaitNanos(), lane.waiting.get()));
+        }
+        candidates.sort(Comparator.comparingLong(Candidate::projectedWaitNanos).thenComparingInt(Candidate::waiting));
+
+        // Another caller may take the chosen slot first; then try the next shortcode
+        for (Candidate candidate : candidates) {
+            Lane lane = candidate.lane();
+            long waitNanos = lane.rateLimiter.reserve(maxWaitNanos);
+            if (waitNanos >= 0) {
+                await(lane, waitNanos);
+                return push.apply(lane.shortCode);
+            }
+        }
+
+        meterRegistry.counter("daraja.client.rejections", "reason", "rate_limited").increment();
+        log.warn("STK push rejected: rate limit queues are full");
+        throw new PaymentsUnavailableException(
+                "Payments are busy right now. Please try again in a moment.",
+                Math.max(1, TimeUnit.NANOSECONDS.toSeconds(maxWaitNanos)));
+    }
+
+    private static void await(Lane lane, long waitNanos) {
+        if (waitNanos > 0) {
+            lane.waiting.incrementAndGet();
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PaymentsUnavailableException("Payment request was interrupted. Please try again.", 1);
+            } finally {
+                lane.waiting.decrementAndGet();
+            }
+        }
+        lane.waitTimer.record(waitNanos, TimeUnit.NANOSECONDS);
+    }
+}
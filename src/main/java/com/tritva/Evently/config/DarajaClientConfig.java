@@ -0,0 +1,30 @@
+package com.tritva.Evently.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+@Configuration
+public class DarajaClientConfig {
+
+    // One JDK HttpClient for all Daraja calls: it keeps connections alive and
+    // negotiates HTTP/2 over TLS, so requests skip the TCP and TLS handshakes
+    @Bean
+    public RestClient darajaRestClient(MpesaConfig mpesaConfig) {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(mpesaConfig.getConnectTimeoutMs()))
+                .build();
+
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(mpesaConfig.getReadTimeoutMs()));
+
+        return RestClient.builder()
+                .requestFactory(requestFactory)
+                .build();
+    }
+}
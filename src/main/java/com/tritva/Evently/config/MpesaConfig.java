@@ -5,6 +5,10 @@ import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
 @Configuration
 @ConfigurationProperties(prefix = "mpesa")
 @Getter
@@ -20,4 +24,87 @@ public class MpesaConfig {
     private String callbackUrl;
     private String apiUrl;
     private String oauthUrl;
+
+    // Daraja HTTP client limits
+    private long connectTimeoutMs = 3000;
+    private long readTimeoutMs = 10000;
+
+    // Treat tokens as expired this long before Daraja does, to absorb clock skew and latency
+    private long tokenExpirySkewSeconds = 60;
+
+    // Renew tokens in the background this long before they expire
+    private long tokenRefreshAheadSeconds = 300;
+
+    // At most this many request threads may be waiting on Daraja at once
+    private int bulkheadMaxConcurrent = 20;
+
+    // How long a caller may wait for a bulkhead slot before being turned away
+    private long bulkheadMaxWaitMs = 100;
+
+    // Consecutive timeouts or 5xx responses that open the circuit
+    private int circuitFailureThreshold = 5;
+
+    // How long the circuit stays open before a probe is let through
+    private long circuitOpenMs = 30000;
+
+    // STK push transactions per second allowed for the shortcode, and how many may go at once
+    private double stkPushPerSecond = 5;
+    private int stkPushBurst = 5;
+
+    // Longest an STK push may wait for a rate limit slot before being turned away
+    private long stkPushMaxWaitMs = 3000;
+
+    // App instances sending pushes for the same shortcodes. Rate limits are kept per
+    // instance, so each one paces itself to 1/nodeCount of the shortcode's rate
+    private int nodeCount = 1;
+
+    // Paybill shortcodes to spread STK pushes over; empty means just shortCode/passkey above
+    private List<ShortCode> shortCodes = new ArrayList<>();
+
+    /**
+     * One paybill's credentials. Consumer key/secret and rate settings left
+     * empty are taken from the top-level values.
+     */
+    @Getter
+    @Setter
+    public static class ShortCode {
+        private String shortCode;
+        private String passkey;
+        private String consumerKey;
+        private String consumerSecret;
+        private Double stkPushPerSecond;
+        private Integer stkPushBurst;
+    }
+
+    // The configured pool, with blanks filled from the top-level values; never empty
+    public List<ShortCode> resolvedShortCodes() {
+        List<ShortCode> configured = shortCodes.isEmpty() ? List.of(new ShortCode()) : shortCodes;
+        List<ShortCode> resolved = new ArrayList<>(configured.size());
+        for (ShortCode entry : configured) {
+            ShortCode filled = new ShortCode();
+            filled.setShortCode(entry.getShortCode() != null ? entry.getShortCode() : shortCode);
+            filled.setPasskey(entry.getPasskey() != null ? entry.getPasskey() : passkey);
+            filled.setConsumerKey(entry.getConsumerKey() != null ? entry.getConsumerKey() : consumerKey);
+            filled.setConsumerSecret(entry.getConsumerSecret() != null ? entry.getConsumerSecret() : consumerSecret);
+            filled.setStkPushPerSecond(entry.getStkPushPerSecond() != null ? entry.getStkPushPerSecond() : stkPushPerSecond);
+            filled.setStkPushBurst(entry.getStkPushBurst() != null ? entry.getStkPushBurst() : stkPushBurst);
+            resolved.add(filled);
+        }
+        return resolved;
+    }
+
+    /**
+     * Credentials for a shortcode recorded on a payment; the first one for older
+     * rows without it. Empty once the shortcode is no longer configured, since
+     * another paybill's credentials cannot query its pushes.
+     */
+    public Optional<ShortCode> resolveShortCode(String code) {
+        List<ShortCode> resolved = resolvedShortCodes();
+        if (code == null) {
+            return Optional.of(resolved.get(0));
+        }
+        return resolved.stream()
+                .filter(entry -> entry.getShortCode().equals(code))
+                .findFirst();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,10 @@
+package com.tritva.Evently.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+    // This enables @Scheduled jobs such as the seat hold sweeper
+}
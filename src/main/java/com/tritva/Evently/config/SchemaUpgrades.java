@@ -0,0 +1,97 @@
+package com.tritva.Evently.config;
+
+import com.tritva.Evently.util.TicketCodeGenerator;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Schema changes that ddl-auto: update cannot make: dropping what the entities
+ * no longer map, and the sequences used outside JPA.
+ * Runs after Hibernate has updated the tables and before the app takes traffic.
+ * Every step checks the catalog first, so it is safe on every start.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+@Slf4j
+public class SchemaUpgrades {
+
+    private static final String LEGACY_TICKET_CODE_SEQUENCE = "ticket_code_seq";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Ticket codes reserved per trip to the database; any change applies to every node at once
+    @Value("${app.tickets.code-block-size:1000}")
+    private int codeBlockSize;
+
+    @PostConstruct
+    public void upgrade() {
+        // QR images now live in QrImageStore; the old data URLs and their unique index go with the column
+        dropColumn("tickets", "qr_code_url");
+        // One payment now pays for several tickets, so the one-to-one uniqueness has to go
+        dropSingleColumnUniqueConstraints("tickets", "payment_id");
+        ticketCodeSequence();
+    }
+
+    /**
+     * Ticket code blocks come from a sequence stepping by the block size.
+     * The first start moves on from the old sequence, whose value v stood for the block
+     * starting at v * block size, and drops it so nodes still running the old code
+     * fail to reserve blocks instead of issuing duplicates.
+     */
+    private void ticketCodeSequence() {
+        String sequence = TicketCodeGenerator.SEQUENCE_NAME;
+        Long step = jdbcTemplate.query(
+                "SELECT increment_by FROM pg_sequences WHERE schemaname = current_schema() AND sequencename = ?",
+                rs -> rs.next() ? rs.getLong(1) : null, sequence);
+
+        if (step == null) {
+            // Block sizes were only ever raised, so the current one covers every old block
+            Long oldLast = jdbcTemplate.query(
+                    "SELECT last_value FROM pg_sequences WHERE schemaname = current_schema() AND sequencename = ?",
+                    rs -> rs.next() ? rs.getLong(1) : null, LEGACY_TICKET_CODE_SEQUENCE);
+            long firstBlockStart = oldLast != null ? (oldLast + 1) * codeBlockSize : 1;
+            jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS " + sequence +
+                    " INCREMENT BY " + codeBlockSize + " START WITH " + (firstBlockStart + codeBlockSize - 1));
+            jdbcTemplate.execute("DROP SEQUENCE IF EXISTS " + LEGACY_TICKET_CODE_SEQUENCE);
+            log.info("Created {} with blocks of {} starting at {}", sequence, codeBlockSize, firstBlockStart);
+        } else if (step != codeBlockSize) {
+            jdbcTemplate.execute("ALTER SEQUENCE " + sequence + " INCREMENT BY " + codeBlockSize);
+            log.info("Changed the ticket code block size from {} to {}", step, codeBlockSize);
+        }
+    }
+
+    private void dropColumn(String table, String column) {
+        Integer present = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM information_schema.columns " +
+                        "WHERE table_schema = current_schema() AND table_name = ? AND column_name = ?",
+                Integer.class, table, column);
+        if (present != null && present > 0) {
+            jdbcTemplate.execute("ALTER TABLE " + table + " DROP COLUMN " + column);
+            log.info("Dropped unmapped column {}.{}", table, column);
+        }
+    }
+
+    // Hibernate names these with a hash, so they are found by the column they cover
+    private void dropSingleColumnUniqueConstraints(String table, String column) {
+        List<String> names = jdbcTemplate.queryForList(
+                "SELECT c.conname FROM pg_constraint c " +
+                        "JOIN pg_class t ON t.oid = c.conrelid " +
+                        "JOIN pg_namespace n ON n.oid = t.relnamespace " +
+                        "JOIN pg_attribute a ON a.attrelid = t.oid AND a.attnum = c.conkey[1] " +
+                        "WHERE n.nspname = current_schema() AND t.relname = ? AND a.attname = ? " +
+                        "AND c.contype = 'u' AND cardinality(c.conkey) = 1",
+                String.class, table, column);
+        for (String name : names) {
+            jdbcTemplate.execute("ALTER TABLE " + table + " DROP CONSTRAINT \"" + name + "\"");
+            log.info("Dropped unique constraint {} on {}.{}", name, table, column);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.tritva.Evently.controller;
+
+import com.tritva.Evently.model.dto.CheckInRequestDto;
+import com.tritva.Evently.model.dto.CheckInResultDto;
+import com.tritva.Evently.service.CheckInService;
+import com.tritva.Evently.util.TicketPayloadSigner;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+import java.util.UUID;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/check-in")
+@Tag(name = "Gate Check-in", description = "APIs for scanning tickets at the venue")
+@PreAuthorize("hasRole('ADMIN') or hasRole('ORGANISER')")
+public class CheckInController {
+
+    private final CheckInService checkInService;
+    private final TicketPayloadSigner ticketPayloadSigner;
+
+    @Operation(summary = "Ticket signing key",
+            description = "Ed25519 public key (X.509, Base64) that scanners use to verify signed QR payloads offline.")
+    @GetMapping("/public-key")
+    public ResponseEntity<Map<String, Object>> publicKey() {
+        return ResponseEntity.ok(Map.of(
+                "algorithm", TicketPayloadSigner.ALGORITHM,
+                "format", "X.509",
+                "payloadPrefix", TicketPayloadSigner.PREFIX,
+                "key", ticketPayloadSigner.publicKeyBase64()
+        ));
+    }
+
+    @Operation(summary = "Open doors", description = "Loads the event's tickets into memory for fast gate scanning.")
+    @PostMapping("/events/{eventId}/open")
+    public ResponseEntity<Map<String, Object>> openDoors(
+            @PathVariable UUID eventId,
+            @AuthenticationPrincipal UserDetails requester) {
+        int tickets = checkInService.openDoors(eventId, requester);
+        return ResponseEntity.ok(Map.of(
+                "success", true,
+                "message", "Doors open",
+                "tickets", tickets
+        ));
+    }
+
+    @Operation(summary = "Close doors", description = "Releases the event's gate index.")
+    @PostMapping("/events/{eventId}/close")
+    public ResponseEntity<Void> closeDoors(
+            @PathVariable UUID eventId,
+            @AuthenticationPrincipal UserDetails requester) {
+        checkInService.closeDoors(eventId, requester);
+        return ResponseEntity.noContent().build();
+    }
+
+    @Operation(summary = "Check in a ticket", description = "Validates a scanned code and admits the ticket once.")
+    @PostMapping("/events/{eventId}")
+    public ResponseEntity<CheckInResultDto> checkIn(
+            @PathVariable UUID eventId,
+            @Valid @RequestBody CheckInRequestDto request,
+            @AuthenticationPrincipal UserDetails requester) {
+        CheckInResultDto result = checkInService.checkIn(eventId, request.getCode(), requester);
+        return result.isAdmitted()
+                ? ResponseEntity.ok(result)
+                : ResponseEntity.status(HttpStatus.CONFLICT).body(result);
+    }
+}
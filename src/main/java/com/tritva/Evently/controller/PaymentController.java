@@ -5,7 +5,7 @@ import com.tritva.Evently.model.dto.PaymentDto;
 import com.tritva.Evently.model.dto.PaymentRequestDto;
 import com.tritva.Evently.model.entity.User;
 import com.tritva.Evently.repository.UserRepository;
-import com.tritva.Evently.service.MpesaService;
+import com.tritva.Evently.service.MpesaCallbackInbox;
 import com.tritva.Evently.service.PaymentNotificationService;
 import com.tritva.Evently.service.PaymentService;
 import jakarta.validation.Valid;
@@ -27,7 +27,7 @@ import java.util.UUID;
 public class PaymentController {
 
     private final PaymentService paymentService;
-    private final MpesaService mpesaService;
+    private final MpesaCallbackInbox callbackInbox;
     private final UserRepository userRepository;
     private final PaymentNotificationService notificationService;
 
@@ -68,14 +68,18 @@ public class PaymentController {
     }
 
     @PostMapping("/callback")
-    public ResponseEntity<Map<String, String>> mpesaCallback(@RequestBody String callbackData) {
-        log.info("M-Pesa callback received: {}", callbackData);
+    public ResponseEntity<Map<String, String>> mpesaCallback(@RequestBody String callbackData,
+                                                             @RequestParam(value = "ref", required = false) String reference) {
+        log.debug("M-Pesa callback received for {}: {}", reference, callbackData);
 
+        // Store and acknowledge; the inbox workers apply it to the payment
         try {
-            mpesaService.processCallback(callbackData);
+            if (!callbackInbox.accept(callbackData, reference)) {
+                log.info("Duplicate M-Pesa callback ignored");
+            }
             return ResponseEntity.ok(Map.of("ResultCode", "0", "ResultDesc", "Success"));
         } catch (Exception e) {
-            log.error("Error processing callback", e);
+            log.error("Error storing callback", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of("ResultCode", "1", "ResultDesc", "Failed"));
         }
@@ -0,0 +1,42 @@
+package com.tritva.Evently.controller;
+
+import com.tritva.Evently.model.dto.QrRegenerationStatusDto;
+import com.tritva.Evently.service.QrRegenerationService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.UUID;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/events/{eventId}/qr-codes")
+@Tag(name = "QR Regeneration", description = "APIs for reissuing an event's ticket QR codes")
+@PreAuthorize("hasRole('ADMIN') or hasRole('ORGANISER')")
+public class QrRegenerationController {
+
+    private final QrRegenerationService qrRegenerationService;
+
+    @Operation(summary = "Regenerate QR codes",
+            description = "Re-renders every ticket QR code of the event in the background. With rotateCodes, tickets also get new verification codes, old QR codes stop working and holders are emailed the new ones. Admins or the event's organiser only.")
+    @PostMapping("/regeneration")
+    public ResponseEntity<QrRegenerationStatusDto> regenerate(
+            @PathVariable UUID eventId,
+            @RequestParam(defaultValue = "false") boolean rotateCodes,
+            @AuthenticationPrincipal UserDetails requester) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(qrRegenerationService.start(eventId, rotateCodes, requester));
+    }
+
+    @Operation(summary = "Regeneration progress", description = "Progress of the event's latest QR regeneration.")
+    @GetMapping("/regeneration")
+    public ResponseEntity<QrRegenerationStatusDto> status(@PathVariable UUID eventId) {
+        return ResponseEntity.ok(qrRegenerationService.status(eventId));
+    }
+}
@@ -1,20 +1,35 @@
 package com.tritva.Evently.controller;
 
 import com.tritva.Evently.model.dto.MpesaPaymentResponseDto;
+import com.tritva.Evently.model.dto.QueueStatusDto;
 import com.tritva.Evently.model.dto.TicketDto;
 import com.tritva.Evently.model.dto.TicketPurchaseRequestDto;
 import com.tritva.Evently.model.entity.User;
 import com.tritva.Evently.repository.UserRepository;
+import com.tritva.Evently.service.QrCodeService;
 import com.tritva.Evently.service.TicketPurchaseService;
 import com.tritva.Evently.service.TicketService;
+import com.tritva.Evently.service.WaitingRoomService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
-
+import org.springframework.util.DigestUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.UUID;
 
@@ -27,6 +42,13 @@ public class TicketController {
     private final TicketService ticketService;
     private final TicketPurchaseService ticketPurchaseService;
     private final UserRepository userRepository;
+    private final WaitingRoomService waitingRoomService;
+    private final QrCodeService qrCodeService;
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
 
     @PostMapping
     public ResponseEntity<TicketDto> createTicket(
@@ -35,9 +57,22 @@ public class TicketController {
         return ResponseEntity.status(HttpStatus.CREATED).body(createdTicket);
     }
 
+    @PostMapping("/queue/{eventId}")
+    public ResponseEntity<QueueStatusDto> joinQueue(@PathVariable UUID eventId) {
+        QueueStatusDto status = waitingRoomService.join(eventId);
+        return ResponseEntity.ok(status);
+    }
+
+    @GetMapping("/queue/status")
+    public ResponseEntity<QueueStatusDto> getQueueStatus(@RequestParam String token) {
+        QueueStatusDto status = waitingRoomService.status(token);
+        return ResponseEntity.ok(status);
+    }
+
     @PostMapping("/purchase")
     public ResponseEntity<MpesaPaymentResponseDto> purchaseTicket(
             @Valid @RequestBody TicketPurchaseRequestDto request,
+            @RequestHeader(value = "X-Queue-Token", required = false) String queueToken,
             Authentication authentication) {
 
         // Get logged-in user's email
@@ -52,7 +87,16 @@ public class TicketController {
         // Set the user ID from authenticated user
         request.setUserId(user.getId());
 
-        MpesaPaymentResponseDto response = ticketPurchaseService.purchaseTicket(request);
+        // Events with a waiting room only accept buyers whose turn has come
+        waitingRoomService.admit(request.getEventId(), queueToken);
+
+        MpesaPaymentResponseDto response;
+        try {
+            response = ticketPurchaseService.purchaseTicket(request);
+        } catch (RuntimeException e) {
+            waitingRoomService.release(request.getEventId(), queueToken);
+            throw e;
+        }
         return ResponseEntity.ok(response);
     }
 
@@ -93,9 +137,46 @@ public class TicketController {
         return ResponseEntity.noContent().build();
     }
 
-    @GetMapping("/{id}/qr")
-    public ResponseEntity<String> getTicketQRCode(@PathVariable UUID id) {
-        String qrCode = ticketService.generateQRCode(id);
-        return ResponseEntity.ok(qrCode);
+    @GetMapping(value = "/{id}/qr", produces = MediaType.IMAGE_PNG_VALUE)
+    public void getTicketQRCode(
+            @PathVariable UUID id,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        QrCodeService.QrImage image = qrCodeService.getTicketQrImage(id);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().cachePrivate().getHeaderValue());
+
+        // Holders refresh this page a lot; revalidating is cheap and a reissued QR code shows up at once
+        if (new ServletWebRequest(request, response).checkNotModified(image.etag())) {
+            return;
+        }
+
+        response.setContentType(MediaType.IMAGE_PNG_VALUE);
+
+        // Let Tomcat hand the file straight to the socket when it can; the bytes are never read here
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            long size = qrCodeService.pngSize(image);
+            response.setContentLengthLong(size);
+            request.setAttribute(SENDFILE_FILENAME, image.file().toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, size);
+            return;
+        }
+
+        ByteBuffer png = qrCodeService.readPng(image);
+        response.setContentLengthLong(png.remaining());
+        Channels.newChannel(response.getOutputStream()).write(png);
+    }
+
+    @GetMapping(value = "/{id}/qr.svg", produces = "image/svg+xml")
+    public ResponseEntity<String> getTicketQRCodeSvg(@PathVariable UUID id, WebRequest request) {
+        String svg = qrCodeService.renderSvg(id);
+        String etag = "\"" + DigestUtils.md5DigestAsHex(svg.getBytes(StandardCharsets.UTF_8)) + "\"";
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(svg);
     }
 }
\ No newline at end of file
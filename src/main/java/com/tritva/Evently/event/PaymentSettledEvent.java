@@ -0,0 +1,9 @@
+package com.tritva.Evently.event;
+
+import com.tritva.Evently.model.Status;
+
+import java.util.UUID;
+
+// Published once M-Pesa reports the final outcome of an STK push (COMPLETED or FAILED)
+public record PaymentSettledEvent(UUID paymentId, String checkoutRequestId, Status status) {
+}
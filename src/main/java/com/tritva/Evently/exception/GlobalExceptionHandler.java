@@ -3,6 +3,7 @@ package com.tritva.Evently.exception;
 
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.BadCredentialsException;
@@ -56,6 +57,36 @@ import java.util.Map;
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body(response);
         }
 
+        // Thrown by services that check ownership on top of the caller's role
+        @ExceptionHandler(org.springframework.security.access.AccessDeniedException.class)
+        public ResponseEntity<Map<String, Object>> handleForbidden(org.springframework.security.access.AccessDeniedException ex) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", ex.getMessage());
+
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(response);
+        }
+
+        @ExceptionHandler(QueueAdmissionException.class)
+        public ResponseEntity<Map<String, Object>> handleQueueAdmission(QueueAdmissionException ex) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", ex.getMessage());
+
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(response);
+        }
+
+        @ExceptionHandler(PaymentsUnavailableException.class)
+        public ResponseEntity<Map<String, Object>> handlePaymentsUnavailable(PaymentsUnavailableException ex) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", ex.getMessage());
+
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                    .body(response);
+        }
+
         @ExceptionHandler(RuntimeException.class)
         public ResponseEntity<Map<String, Object>> handleRuntimeException(RuntimeException ex) {
             log.error("Runtime exception: ", ex);
@@ -0,0 +1,16 @@
+package com.tritva.Evently.exception;
+
+// M-Pesa is failing or saturated; callers are turned away instead of queuing on it
+public class PaymentsUnavailableException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public PaymentsUnavailableException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
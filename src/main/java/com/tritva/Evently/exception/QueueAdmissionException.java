@@ -0,0 +1,7 @@
+package com.tritva.Evently.exception;
+
+public class QueueAdmissionException extends RuntimeException {
+    public QueueAdmissionException(String message) {
+        super(message);
+    }
+}
@@ -31,6 +31,7 @@ public interface EventMapper {
     @Mapping(target = "organiser", ignore = true)
     @Mapping(target = "category", ignore = true)
     @Mapping(target = "tickets", ignore = true)
+    @Mapping(target = "ticketsSold", ignore = true)
     @Mapping(target = "createdAt", ignore = true)
     Event toEntity(CreateEventDto createEventDto);
 
@@ -43,7 +44,6 @@ public interface EventMapper {
         if (event == null) {
             return 0;
         }
-        int ticketsSold = event.getTickets() != null ? event.getTickets().size() : 0;
-        return Math.max(0, event.getCapacity() - ticketsSold);
+        return Math.max(0, event.getCapacity() - event.getTicketsSold());
     }
 }
\ No newline at end of file
@@ -16,6 +16,7 @@ public interface TicketMapper {
     @Mapping(source = "event.id", target = "eventId")
     @Mapping(source = "user.id", target = "userId")
     @Mapping(source = "payment.id", target = "paymentId")
+    @Mapping(target = "qrCodeUrl", expression = "java(\"/api/tickets/\" + ticket.getId() + \"/qr\")")
     TicketDto toDto(Ticket ticket);
 
     // Convert DTO → entity (relationships set manually later)
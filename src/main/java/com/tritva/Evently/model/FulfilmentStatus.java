@@ -0,0 +1,6 @@
+package com.tritva.Evently.model;
+
+// Where a ticket is in the render-then-email pipeline
+public enum FulfilmentStatus {
+    PENDING, RENDERED, DELIVERED, FAILED
+}
@@ -0,0 +1,5 @@
+package com.tritva.Evently.model;
+
+public enum HoldStatus {
+    ACTIVE, CONVERTED, RELEASED, EXPIRED
+}
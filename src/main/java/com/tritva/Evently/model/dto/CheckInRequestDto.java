@@ -0,0 +1,14 @@
+package com.tritva.Evently.model.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class CheckInRequestDto {
+
+    // Verification code, ticket number or the raw QR content
+    @NotBlank(message = "Ticket code is required")
+    private String code;
+}
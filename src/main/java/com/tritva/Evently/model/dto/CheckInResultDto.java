@@ -0,0 +1,17 @@
+package com.tritva.Evently.model.dto;
+
+import lombok.*;
+
+import java.util.UUID;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CheckInResultDto {
+    private boolean admitted;
+    private UUID ticketId;
+    private String ticketNumber;
+    private String message;
+}
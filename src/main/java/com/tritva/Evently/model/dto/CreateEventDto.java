@@ -44,4 +44,11 @@ public class CreateEventDto {
 
     @Min(value = 1, message = "Capacity must be at least 1")
     private int capacity;
+
+    // Opt in to block-based seat allocation for high-demand on-sales
+    private boolean hotSale;
+
+    // Buyers admitted per second through the waiting room; leave empty for no waiting room
+    @Min(value = 1, message = "Admission rate must be at least 1 per second")
+    private Integer admissionRatePerSecond;
 }
\ No newline at end of file
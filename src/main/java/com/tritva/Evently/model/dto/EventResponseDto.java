@@ -26,5 +26,7 @@ public class EventResponseDto {
     private LocalDateTime createdAt;
     private int capacity;
     private long availableTickets;
+    private boolean hotSale;
+    private Integer admissionRatePerSecond;
 
 }
@@ -2,7 +2,6 @@ package com.tritva.Evently.model.dto;
 
 import lombok.*;
 
-import java.math.BigDecimal;
 import java.util.UUID;
 
 @Getter
@@ -12,7 +11,11 @@ import java.util.UUID;
 @Builder
 public class MpesaPaymentRequestDto {
     private String phone;
-    private BigDecimal amount;
     private UUID eventId;
     private UUID userId;
+
+    // Purchase intent, kept on the payment so tickets can be issued when M-Pesa calls back
+    private String email;
+    private Integer quantity;
+    private UUID holdId;
 }
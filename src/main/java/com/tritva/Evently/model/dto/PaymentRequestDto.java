@@ -2,7 +2,6 @@ package com.tritva.Evently.model.dto;
 
 import lombok.*;
 
-import java.math.BigDecimal;
 import java.util.UUID;
 
 @Getter
@@ -12,6 +11,5 @@ import java.util.UUID;
 @AllArgsConstructor
 public class PaymentRequestDto {
     private UUID eventId;
-    private BigDecimal amount;
     private String phoneNumber;
 }
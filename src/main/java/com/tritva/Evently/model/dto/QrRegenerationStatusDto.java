@@ -0,0 +1,29 @@
+package com.tritva.Evently.model.dto;
+
+import lombok.*;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class QrRegenerationStatusDto {
+    private UUID eventId;
+
+    // QUEUED, RUNNING, COMPLETED or FAILED
+    private String state;
+
+    // True when verification codes are reissued, not just re-rendered
+    private boolean rotateCodes;
+
+    private long totalTickets;
+    private long processedTickets;
+    private double ticketsPerSecond;
+
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private String error;
+}
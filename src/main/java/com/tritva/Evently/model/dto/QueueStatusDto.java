@@ -0,0 +1,21 @@
+package com.tritva.Evently.model.dto;
+
+import lombok.*;
+
+import java.util.UUID;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class QueueStatusDto {
+    private String token;
+    private UUID eventId;
+
+    // Number of buyers still ahead of this token
+    private long position;
+
+    // True once the token may be used on /api/tickets/purchase
+    private boolean admitted;
+}
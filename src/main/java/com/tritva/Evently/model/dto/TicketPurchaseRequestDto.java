@@ -1,11 +1,12 @@
 package com.tritva.Evently.model.dto;
 
 import jakarta.validation.constraints.Email;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Pattern;
 import lombok.*;
 
-import java.math.BigDecimal;
 import java.util.UUID;
 
 @Getter
@@ -21,8 +22,10 @@ public class TicketPurchaseRequestDto {
     // Optional - only if user is logged in
     private UUID userId;
 
-    @NotNull(message = "Amount is required")
-    private BigDecimal amount;
+    @Min(value = 1, message = "Quantity must be at least 1")
+    @Max(value = 10, message = "You can buy at most 10 tickets at once")
+    @Builder.Default
+    private int quantity = 1;
 
     @NotNull(message = "Phone number is required")
     @Pattern(
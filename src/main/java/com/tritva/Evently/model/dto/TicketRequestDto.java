@@ -1,6 +1,7 @@
 package com.tritva.Evently.model.dto;
 
 import jakarta.validation.constraints.Email;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Pattern;
 import lombok.Getter;
@@ -21,9 +22,16 @@ public class TicketRequestDto {
     // Optional if payment will be created separately
     private UUID paymentId;
 
+    // Optional seat hold placed before the STK push
+    private UUID holdId;
+
+    // Price of a single ticket
     @NotNull(message = "Price is required")
     private Double price;
 
+    @Min(value = 1, message = "Quantity must be at least 1")
+    private int quantity = 1;
+
     @NotNull(message = "Phone number is required for STK push")
     @Pattern(
             regexp = "^(?:254|\\+254|0)?7\\d{8}$",
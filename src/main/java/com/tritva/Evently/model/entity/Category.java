@@ -1,5 +1,6 @@
 package com.tritva.Evently.model.entity;
 
+import com.tritva.Evently.util.UuidV7;
 import jakarta.persistence.*;
 import lombok.*;
 
@@ -16,7 +17,7 @@ import java.util.UUID;
 @Table(name = "categories")
 public class Category {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @UuidV7
     private UUID id;
 
     @Column(nullable = false, unique = true)
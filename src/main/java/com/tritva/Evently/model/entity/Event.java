@@ -1,7 +1,9 @@
 package com.tritva.Evently.model.entity;
 
+import com.tritva.Evently.util.UuidV7;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.time.LocalDateTime;
 import java.util.HashSet;
@@ -14,10 +16,11 @@ import java.util.UUID;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
+@DynamicUpdate
 @Table(name = "events")
 public class Event {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @UuidV7
     private UUID id;
 
     @Column(nullable = false, unique = true)
@@ -58,6 +61,27 @@ public class Event {
     @Column(nullable = false)
     private int capacity;
 
+    /**
+     * Seats claimed so far. Only ever changed through the conditional
+     * UPDATEs in EventRepository, so it never goes above capacity.
+     * DynamicUpdate keeps ordinary event edits from writing a stale value back.
+     */
+    @Column(nullable = false, columnDefinition = "integer default 0")
+    @Builder.Default
+    private int ticketsSold = 0;
+
+    /**
+     * Hot sales hand out seats from blocks claimed by each node
+     * instead of updating this row for every purchase.
+     */
+    @Column(nullable = false, columnDefinition = "boolean default false")
+    private boolean hotSale;
+
+    /**
+     * Buyers let through the waiting room per second; null means no waiting room
+     */
+    private Integer admissionRatePerSecond;
+
     @OneToMany(mappedBy = "event", cascade = CascadeType.ALL, orphanRemoval = true)
     @Builder.Default
     private Set<Ticket> tickets = new HashSet<>();
@@ -76,7 +100,7 @@ public class Event {
      */
     @Transient
     public int getAvailableTickets() {
-        return capacity - tickets.size();
+        return capacity - ticketsSold;
     }
 
     /**
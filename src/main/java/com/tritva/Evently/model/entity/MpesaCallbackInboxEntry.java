@@ -0,0 +1,56 @@
+package com.tritva.Evently.model.entity;
+
+import com.tritva.Evently.util.UuidV7;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * A raw M-Pesa callback, stored as received before it is acknowledged.
+ * Rows are written and drained with plain SQL by MpesaCallbackInbox; the entity
+ * only defines the table.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(name = "mpesa_callback_inbox", indexes = {
+        @Index(name = "idx_mpesa_callback_inbox_processed_at_id", columnList = "processed_at, id")
+})
+public class MpesaCallbackInboxEntry {
+
+    @Id
+    @UuidV7
+    private UUID id;
+
+    // Hash of the whole body; Safaricom retries collapse onto one row
+    @Column(name = "dedupe_key", nullable = false, unique = true, length = 100)
+    private String dedupeKey;
+
+    @Column(nullable = false, columnDefinition = "text")
+    private String payload;
+
+    // Payment reference from the callback URL; absent for pushes sent before there was one
+    @Column(length = 12)
+    private String reference;
+
+    @Column(name = "received_at", nullable = false)
+    private LocalDateTime receivedAt;
+
+    // A worker owns the row until then; unprocessed rows past it are picked up again
+    @Column(name = "claimed_until")
+    private LocalDateTime claimedUntil;
+
+    @Column(name = "processed_at")
+    private LocalDateTime processedAt;
+
+    @Column(nullable = false, columnDefinition = "integer default 0")
+    private int attempts;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+}
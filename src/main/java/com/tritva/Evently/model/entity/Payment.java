@@ -1,6 +1,7 @@
 package com.tritva.Evently.model.entity;
 
 import com.tritva.Evently.model.Status;
+import com.tritva.Evently.util.UuidV7;
 import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.annotations.CreationTimestamp;
@@ -14,11 +15,16 @@ import java.util.UUID;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-@Table(name = "payments")
+@Table(name = "payments", indexes = {
+        // Reconciliation scans PENDING payments in ID order
+        @Index(name = "idx_payments_status_id", columnList = "status, id"),
+        // The hold sweep skips holds with a pending payment
+        @Index(name = "idx_payments_seat_hold_id", columnList = "seat_hold_id")
+})
 public class Payment {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @UuidV7
     private UUID id;
 
     // Who made the payment
@@ -42,6 +48,18 @@ public class Payment {
     @Column(unique = true)
     private String mpesaCheckoutRequestId;
 
+    // Daraja's other ID for the push; its callback must carry the same one
+    private String merchantRequestId;
+
+    // Ours, sent as the AccountReference and on the callback URL, so the callback finds
+    // its payment even when the push response and its CheckoutRequestID were lost
+    @Column(unique = true, length = 12)
+    private String accountReference;
+
+    // Paybill shortcode the STK push was sent from; STK Query has to use the same one
+    @Column(name = "short_code", length = 16)
+    private String shortCode;
+
     // Mpesa transaction result description
     private String mpesaResultDesc;
 
@@ -51,6 +69,24 @@ public class Payment {
     // Mpesa transaction ID (for confirmed payments)
     private String transactionId;
 
+    // Purchase intent: where to send the tickets, how many, and the seats held for them
+    private String buyerEmail;
+
+    private Integer ticketQuantity;
+
+    // Event price per ticket when the buyer was charged; amount is this times the quantity, rounded up
+    private Double unitPrice;
+
+    @Column(name = "seat_hold_id")
+    private UUID seatHoldId;
+
+    // Failed ticket issuance for a completed purchase, kept so the retry sweep can try again
+    @Column(name = "ticket_issue_attempts", nullable = false, columnDefinition = "integer default 0")
+    private int ticketIssueAttempts;
+
+    @Column(name = "ticket_issue_error", length = 500)
+    private String ticketIssueError;
+
     @CreationTimestamp
     private LocalDateTime createdAt;
 }
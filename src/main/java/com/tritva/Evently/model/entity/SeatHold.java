@@ -0,0 +1,54 @@
+package com.tritva.Evently.model.entity;
+
+import com.tritva.Evently.model.HoldStatus;
+import com.tritva.Evently.util.UuidV7;
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Seats set aside for a buyer while their M-Pesa payment is in flight.
+ * The seats are already counted in Event.ticketsSold while the hold is ACTIVE.
+ * The TTL only frees holds that never got a payment; once a PENDING payment
+ * points at the hold, it lasts until the payment completes or fails.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(name = "seat_holds", indexes = {
+        @Index(name = "idx_seat_holds_status_expires_at", columnList = "status, expires_at"),
+        @Index(name = "idx_seat_holds_checkout_request_id", columnList = "checkout_request_id")
+})
+public class SeatHold {
+
+    @Id
+    @UuidV7
+    private UUID id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "event_id", nullable = false)
+    private Event event;
+
+    @Column(nullable = false)
+    private int quantity;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private HoldStatus status;
+
+    // Set once the STK push has been accepted by M-Pesa
+    @Column(name = "checkout_request_id")
+    private String checkoutRequestId;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+}
@@ -1,5 +1,7 @@
 package com.tritva.Evently.model.entity;
 
+import com.tritva.Evently.model.FulfilmentStatus;
+import com.tritva.Evently.util.UuidV7;
 import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.annotations.CreationTimestamp;
@@ -13,11 +15,19 @@ import java.util.UUID;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-@Table(name = "tickets")
+@Table(name = "tickets", uniqueConstraints = {
+        // A payment can only ever issue each of its tickets once
+        @UniqueConstraint(name = "uk_tickets_payment_line", columnNames = {"payment_id", "payment_line"})
+}, indexes = {
+        // Keyset scans of an event's tickets in ID order
+        @Index(name = "idx_tickets_event_id_id", columnList = "event_id, id"),
+        // Retry sweep of unfinished fulfilment
+        @Index(name = "idx_tickets_fulfilment", columnList = "fulfilment_status, fulfilment_due_at")
+})
 public class Ticket {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @UuidV7
     private UUID id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -28,10 +38,15 @@ public class Ticket {
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
 
-    @OneToOne(fetch = FetchType.LAZY)
+    // One payment can cover several tickets
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "payment_id")
     private Payment payment;
 
+    // Position of this ticket within its payment (1..quantity)
+    @Column(name = "payment_line")
+    private Integer paymentLine;
+
     @Column(nullable = false, unique = true)
     private String ticketNumber;
 
@@ -39,12 +54,29 @@ public class Ticket {
 
     private boolean checkedIn = false;
 
-    @Column(unique = true)
-    private String qrCodeUrl;
+    // Content hash of the rendered QR image in QrImageStore
+    @Column(name = "qr_code_key", length = 64)
+    private String qrCodeKey;
 
     @Column(unique = true)
     private String verificationCode;
 
+    // Render and delivery progress; null for tickets not sent through the pipeline
+    @Enumerated(EnumType.STRING)
+    @Column(name = "fulfilment_status", length = 16)
+    private FulfilmentStatus fulfilmentStatus;
+
+    // Where the pipeline emails the ticket, kept so a retry can send it
+    @Column(name = "delivery_email")
+    private String deliveryEmail;
+
+    @Column(name = "fulfilment_attempts", nullable = false, columnDefinition = "integer default 0")
+    private int fulfilmentAttempts;
+
+    // The retry sweep leaves the ticket alone until then
+    @Column(name = "fulfilment_due_at")
+    private LocalDateTime fulfilmentDueAt;
+
     @CreationTimestamp
     private LocalDateTime createdAt;
 }
@@ -1,6 +1,7 @@
 package com.tritva.Evently.model.entity;
 
 import com.tritva.Evently.model.Role;
+import com.tritva.Evently.util.UuidV7;
 import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.annotations.UpdateTimestamp;
@@ -19,7 +20,7 @@ import java.util.UUID;
 @Table(name = "users")
 public class User {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @UuidV7
     private UUID id;
 
     @Column(nullable = false, unique = true)
@@ -3,12 +3,23 @@ package com.tritva.Evently.repository;
 import com.tritva.Evently.model.entity.Category;
 import com.tritva.Evently.model.entity.Event;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.security.core.userdetails.User;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 public interface EventRepository extends JpaRepository<Event, UUID> {
+
+    // Whether the user with this email organises the event
+    boolean existsByIdAndOrganiserEmail(UUID id, String email);
+
+    // Kept by the gate index so each scan can be authorised without a query
+    @Query("SELECT e.organiser.email FROM Event e WHERE e.id = :eventId")
+    Optional<String> findOrganiserEmailById(@Param("eventId") UUID eventId);
     // Find all events by organiser
     List<Event> findByOrganiser(User organiser);
 
@@ -20,4 +31,50 @@ public interface EventRepository extends JpaRepository<Event, UUID> {
 
     // Find events by county
     List<Event> findByCountyIgnoreCase(String county);
+
+    // Atomically claim seats; returns 0 when the event does not have enough left
+    @Modifying
+    @Query("UPDATE Event e SET e.ticketsSold = e.ticketsSold + :quantity " +
+            "WHERE e.id = :eventId AND e.ticketsSold + :quantity <= e.capacity")
+    int claimTickets(@Param("eventId") UUID eventId, @Param("quantity") int quantity);
+
+    // Give seats back, e.g. when a ticket is cancelled
+    @Modifying
+    @Query("UPDATE Event e SET e.ticketsSold = e.ticketsSold - :quantity " +
+            "WHERE e.id = :eventId AND e.ticketsSold >= :quantity")
+    int releaseTickets(@Param("eventId") UUID eventId, @Param("quantity") int quantity);
+
+    // Change capacity only if it still covers the seats already claimed
+    @Modifying
+    @Query("UPDATE Event e SET e.capacity = :capacity WHERE e.id = :eventId AND e.ticketsSold <= :capacity")
+    int updateCapacity(@Param("eventId") UUID eventId, @Param("capacity") int capacity);
+
+    // Raise counters that are behind the tickets issued plus seats held, e.g. events that
+    // predate the counter column; never lowers one, since seat blocks may be out on other nodes
+    @Modifying
+    @Query(value = """
+            UPDATE events e SET tickets_sold = c.taken
+            FROM (SELECT ev.id,
+                         (SELECT count(*) FROM tickets t WHERE t.event_id = ev.id)
+                         + (SELECT COALESCE(SUM(h.quantity), 0) FROM seat_holds h
+                            WHERE h.event_id = ev.id AND h.status = 'ACTIVE') AS taken
+                  FROM events ev) c
+            WHERE e.id = c.id AND e.tickets_sold < c.taken""", nativeQuery = true)
+    int backfillTicketsSold();
+
+    // The same repair for one event, counted in the statement so nothing moves in between
+    @Modifying
+    @Query(value = """
+            UPDATE events e SET tickets_sold = c.taken
+            FROM (SELECT (SELECT count(*) FROM tickets t WHERE t.event_id = :eventId)
+                         + (SELECT COALESCE(SUM(h.quantity), 0) FROM seat_holds h
+                            WHERE h.event_id = :eventId AND h.status = 'ACTIVE') AS taken) c
+            WHERE e.id = :eventId AND e.tickets_sold < c.taken""", nativeQuery = true)
+    int repairTicketsSold(@Param("eventId") UUID eventId);
+
+    @Query("SELECT e.ticketsSold FROM Event e WHERE e.id = :eventId")
+    int findTicketsSoldById(@Param("eventId") UUID eventId);
+
+    @Query("SELECT e.capacity - e.ticketsSold FROM Event e WHERE e.id = :eventId")
+    int findRemainingSeatsById(@Param("eventId") UUID eventId);
 }
@@ -1,9 +1,17 @@
 package com.tritva.Evently.repository;
 
 import com.tritva.Evently.model.entity.Payment;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -16,4 +24,43 @@ public interface PaymentRepository extends JpaRepository<Payment, UUID> {
 
     Optional<Payment> findByMpesaCheckoutRequestId(String mpesaCheckoutRequestId);
 
+    // Row lock that serialises ticket issuance for one payment
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Payment p WHERE p.id = :id")
+    Optional<Payment> findByIdForUpdate(@Param("id") UUID id);
+
+    // Pending payments whose STK push timed out, oldest first, locked for the callback claiming one
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    // A push whose response was lost, pending or already expired by reconciliation
+    Optional<Payment> findByAccountReferenceAndMpesaCheckoutRequestIdIsNull(String accountReference);
+
+    // Pushes sent before payments carried a reference
+    @Query("SELECT p FROM Payment p WHERE p.status = com.tritva.Evently.model.Status.PENDING " +
+            "AND p.mpesaCheckoutRequestId IS NULL AND p.accountReference IS NULL " +
+            "AND p.phoneNumber = :phone AND p.amount = :amount " +
+            "AND p.createdAt > :since ORDER BY p.createdAt")
+    List<Payment> findUnconfirmedPushes(@Param("phone") String phone,
+                                        @Param("amount") Double amount,
+                                        @Param("since") LocalDateTime since);
+
+    // Completed ticket purchases that still have no tickets, oldest first
+    @Query(value = """
+            SELECT p.id FROM payments p
+            WHERE p.status = 'COMPLETED'
+              AND p.buyer_email IS NOT NULL
+              AND p.ticket_issue_attempts < :maxAttempts
+              AND p.created_at < :cutoff
+              AND NOT EXISTS (SELECT 1 FROM tickets t WHERE t.payment_id = p.id)
+            ORDER BY p.id
+            LIMIT :limit""", nativeQuery = true)
+    List<UUID> findUnissuedTicketPurchases(@Param("cutoff") LocalDateTime cutoff,
+                                           @Param("maxAttempts") int maxAttempts,
+                                           @Param("limit") int limit);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Payment p SET p.ticketIssueAttempts = p.ticketIssueAttempts + 1, p.ticketIssueError = :error " +
+            "WHERE p.id = :id")
+    int recordTicketIssueFailure(@Param("id") UUID id, @Param("error") String error);
+
 }
@@ -0,0 +1,40 @@
+package com.tritva.Evently.repository;
+
+import com.tritva.Evently.model.HoldStatus;
+import com.tritva.Evently.model.entity.SeatHold;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface SeatHoldRepository extends JpaRepository<SeatHold, UUID> {
+
+    Optional<SeatHold> findByCheckoutRequestId(String checkoutRequestId);
+
+    // Oldest expired holds first, one page at a time. Holds a payment is still waiting on are
+    // left out: the buyer can pay until M-Pesa says otherwise, and that releases them instead.
+    @Query("SELECT h FROM SeatHold h WHERE h.status = :status AND h.expiresAt < :now " +
+            "AND NOT EXISTS (SELECT p FROM Payment p WHERE p.seatHoldId = h.id " +
+            "AND p.status = com.tritva.Evently.model.Status.PENDING) " +
+            "ORDER BY h.expiresAt")
+    List<SeatHold> findExpired(@Param("status") HoldStatus status,
+                               @Param("now") LocalDateTime now,
+                               Pageable pageable);
+
+    // Move a hold between states; returns 0 if another thread got there first
+    @Modifying
+    @Query("UPDATE SeatHold h SET h.status = :to WHERE h.id = :id AND h.status = :from")
+    int transition(@Param("id") UUID id, @Param("from") HoldStatus from, @Param("to") HoldStatus to);
+
+    @Modifying
+    @Query("UPDATE SeatHold h SET h.checkoutRequestId = :checkoutRequestId WHERE h.id = :id")
+    int attachCheckoutRequestId(@Param("id") UUID id, @Param("checkoutRequestId") String checkoutRequestId);
+}
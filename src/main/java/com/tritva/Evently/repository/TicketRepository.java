@@ -2,8 +2,13 @@ package com.tritva.Evently.repository;
 
 import com.tritva.Evently.model.entity.Ticket;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -21,5 +26,42 @@ public interface TicketRepository extends JpaRepository<Ticket, UUID> {
 
     boolean existsByPaymentId(UUID paymentId);
 
+    List<Ticket> findByPaymentId(UUID paymentId);
+
+    @Query("SELECT t FROM Ticket t JOIN FETCH t.event WHERE t.id = :id")
+    Optional<Ticket> findWithEventById(@Param("id") UUID id);
+
+    @Query("SELECT t FROM Ticket t JOIN FETCH t.event WHERE t.id IN :ids")
+    List<Ticket> findAllWithEventByIdIn(@Param("ids") Collection<UUID> ids);
+
+    // Just the columns the gate needs, without loading Ticket entities
+    @Query("SELECT t.id AS id, t.ticketNumber AS ticketNumber, t.verificationCode AS verificationCode, " +
+            "t.checkedIn AS checkedIn FROM Ticket t WHERE t.event.id = :eventId")
+    List<CheckInView> findCheckInViewsByEventId(@Param("eventId") UUID eventId);
+
+    // Check in by code directly in the database; returns 0 if unknown or already checked in
+    @Transactional
+    @Modifying
+    @Query("UPDATE Ticket t SET t.checkedIn = true WHERE t.event.id = :eventId AND t.checkedIn = false " +
+            "AND (t.verificationCode = :code OR t.ticketNumber = :code)")
+    int checkInByCode(@Param("eventId") UUID eventId, @Param("code") String code);
+
+    // Check in one ticket if the code is still its own; returns 0 if already checked in or the code was reissued
+    @Transactional
+    @Modifying
+    @Query("UPDATE Ticket t SET t.checkedIn = true WHERE t.id = :id AND t.checkedIn = false " +
+            "AND (t.verificationCode = :code OR t.ticketNumber = :code)")
+    int checkInById(@Param("id") UUID id, @Param("code") String code);
+
+    interface CheckInView {
+        UUID getId();
+
+        String getTicketNumber();
+
+        String getVerificationCode();
+
+        Boolean getCheckedIn();
+    }
+
     long countByEventId(UUID eventId);
 }
\ No newline at end of file
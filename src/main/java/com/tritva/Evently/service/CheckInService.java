@@ -0,0 +1,17 @@
+package com.tritva.Evently.service;
+
+import com.tritva.Evently.model.dto.CheckInResultDto;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.UUID;
+
+public interface CheckInService {
+    // Load the event's ticket codes into memory for gate scanning; returns the number of tickets loaded
+    int openDoors(UUID eventId, UserDetails requester);
+
+    // Drop the event's index; scans fall back to the database alone
+    void closeDoors(UUID eventId, UserDetails requester);
+
+    // Validate a scanned code and admit the ticket once. All three are limited to admins and the event's organiser
+    CheckInResultDto checkIn(UUID eventId, String code, UserDetails requester);
+}
@@ -4,6 +4,7 @@ import com.tritva.Evently.model.entity.Ticket;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
@@ -12,6 +13,7 @@ import org.springframework.stereotype.Service;
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 
 @Service
 @RequiredArgsConstructor
@@ -19,6 +21,7 @@ import java.time.format.DateTimeFormatter;
 public class EmailService {
 
     private final JavaMailSender mailSender;
+    private final QrImageStore qrImageStore;
 
     @Value("${app.frontend.url:http://localhost:5173}")
     private String frontendUrl;
@@ -59,17 +62,31 @@ public class EmailService {
     }
 
     public void sendTicketEmail(String to, Ticket ticket) {
+        sendTicketsEmail(to, List.of(ticket));
+    }
+
+    public void sendTicketsEmail(String to, List<Ticket> tickets) {
         try {
             MimeMessage mimeMessage = mailSender.createMimeMessage();
             MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true, "UTF-8");
 
+            String subject = tickets.size() == 1 ? "Your Ticket for " : "Your Tickets for ";
+
             helper.setTo(to);
-            helper.setSubject("Your Ticket for " + ticket.getEvent().getName());
-            helper.setText(buildTicketEmailBody(ticket), true); // true = HTML
+            helper.setSubject(subject + tickets.get(0).getEvent().getName());
+            helper.setText(buildTicketEmailBody(tickets), true); // true = HTML
             helper.setFrom(fromEmail);
 
+            // Attach each QR image inline; data: URLs are blocked by most mail clients
+            for (Ticket ticket : tickets) {
+                if (qrImageStore.contains(ticket.getQrCodeKey())) {
+                    helper.addInline(qrContentId(ticket),
+                            new FileSystemResource(qrImageStore.pathFor(ticket.getQrCodeKey())), "image/png");
+                }
+            }
+
             mailSender.send(mimeMessage);
-            log.info("Ticket email sent to: {}", to);
+            log.info("Ticket email with {} ticket(s) sent to: {}", tickets.size(), to);
         } catch (MessagingException e) {
             log.error("Failed to send ticket email to: {}", to, e);
             throw new RuntimeException("Failed to send ticket email: " + e.getMessage());
@@ -111,9 +128,15 @@ public class EmailService {
             """, frontendUrl, token);
     }
 
-    private String buildTicketEmailBody(Ticket ticket) {
+    private String buildTicketEmailBody(List<Ticket> tickets) {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("EEEE, MMMM dd, yyyy 'at' hh:mm a");
-        String eventDate = ticket.getEvent().getStartDateTime().format(formatter);
+        Ticket first = tickets.get(0);
+        String eventDate = first.getEvent().getStartDateTime().format(formatter);
+
+        StringBuilder ticketSections = new StringBuilder();
+        for (Ticket ticket : tickets) {
+            ticketSections.append(buildTicketSection(ticket));
+        }
 
         return String.format("""
             <!DOCTYPE html>
@@ -134,31 +157,25 @@ public class EmailService {
             <body>
                 <div class="container">
                     <div class="header">
-                        <h1>🎉 Your Ticket is Ready!</h1>
+                        <h1>🎉 Your %s Ready!</h1>
                     </div>
                     <div class="content">
                         <h2>Thank you for your purchase!</h2>
                         <p>Here are your ticket details for:</p>
-                        
+
                         <div class="ticket-info">
                             <h3>%s</h3>
                             <p><strong>Date & Time:</strong> %s</p>
                             <p><strong>Location:</strong> %s, %s</p>
-                            <p><strong>Ticket Number:</strong> %s</p>
-                            <p><strong>Verification Code:</strong> %s</p>
-                            <p><strong>Price:</strong> KES %.2f</p>
                         </div>
 
-                        <div class="qr-code">
-                            <h3>Your QR Code</h3>
-                            <p>Please present this QR code at the event entrance:</p>
-                            <img src="%s" alt="Ticket QR Code" />
-                        </div>
+                        %s
 
                         <div class="ticket-info">
                             <p class="important">IMPORTANT INFORMATION:</p>
                             <ul>
                                 <li>Save this email or take a screenshot of the QR code</li>
+                                <li>Each QR code admits one person</li>
                                 <li>Arrive at least 30 minutes before the event starts</li>
                                 <li>This ticket is non-transferable and non-refundable</li>
                                 <li>You may be asked to show a valid ID along with this ticket</li>
@@ -177,14 +194,37 @@ public class EmailService {
             </body>
             </html>
             """,
-                ticket.getEvent().getName(),
+                tickets.size() == 1 ? "Ticket is" : tickets.size() + " Tickets are",
+                first.getEvent().getName(),
                 eventDate,
-                ticket.getEvent().getLocation(),
-                ticket.getEvent().getCounty(),
+                first.getEvent().getLocation(),
+                first.getEvent().getCounty(),
+                ticketSections
+        );
+    }
+
+    private String buildTicketSection(Ticket ticket) {
+        return String.format("""
+                        <div class="ticket-info">
+                            <p><strong>Ticket Number:</strong> %s</p>
+                            <p><strong>Verification Code:</strong> %s</p>
+                            <p><strong>Price:</strong> KES %.2f</p>
+                        </div>
+
+                        <div class="qr-code">
+                            <h3>Your QR Code</h3>
+                            <p>Please present this QR code at the event entrance:</p>
+                            <img src="%s" alt="Ticket QR Code" />
+                        </div>
+            """,
                 ticket.getTicketNumber(),
                 ticket.getVerificationCode(),
                 ticket.getPrice(),
-                ticket.getQrCodeUrl()
+                "cid:" + qrContentId(ticket)
         );
     }
-}
\ No newline at end of file
+
+    private String qrContentId(Ticket ticket) {
+        return "qr-" + ticket.getTicketNumber();
+    }
+}
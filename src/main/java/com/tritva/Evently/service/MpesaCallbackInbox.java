@@ -0,0 +1,120 @@
+package com.tritva.Evently.service;
+
+import com.tritva.Evently.util.UuidV7Generator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Durable inbox for M-Pesa callbacks. The callback endpoint only inserts the
+ * raw body and acknowledges, so Safaricom gets its answer in one insert's time
+ * and does not retry. Workers drain the inbox in chunks, each callback in its
+ * own transaction; failed ones are retried once their claim lapses.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MpesaCallbackInbox {
+
+    private static final String INSERT = """
+            INSERT INTO mpesa_callback_inbox (id, dedupe_key, payload, reference, received_at, attempts)
+            VALUES (?, ?, ?, ?, now(), 0)
+            ON CONFLICT (dedupe_key) DO NOTHING""";
+
+    // Claims a chunk for this worker; SKIP LOCKED lets several nodes drain side by side
+    private static final String CLAIM = """
+            UPDATE mpesa_callback_inbox SET claimed_until = now() + make_interval(secs => ?)
+            WHERE id IN (
+                SELECT id FROM mpesa_callback_inbox
+                WHERE processed_at IS NULL
+                  AND attempts < ?
+                  AND (claimed_until IS NULL OR claimed_until < now())
+                ORDER BY id
+                LIMIT ?
+                FOR UPDATE SKIP LOCKED)
+            RETURNING id, payload, reference""";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MpesaService mpesaService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.payments.callback-inbox.chunk-size:100}")
+    private int chunkSize;
+
+    // How long a claimed callback is reserved; also the retry delay after a failure
+    @Value("${app.payments.callback-inbox.claim-seconds:30}")
+    private int claimSeconds;
+
+    // Callbacks that fail this many times stay in the table for inspection
+    @Value("${app.payments.callback-inbox.max-attempts:10}")
+    private int maxAttempts;
+
+    private record Claimed(UUID id, String payload, String reference) {
+    }
+
+    /**
+     * Stores a callback. Returns false if an identical one was already stored.
+     * Only byte-identical bodies collapse: a different callback for the same
+     * CheckoutRequestID is kept and left to the payment's status guard.
+     */
+    public boolean accept(String callbackData, String reference) {
+        int inserted = jdbcTemplate.update(INSERT,
+                UuidV7Generator.next(), "sha256:" + sha256(callbackData), callbackData, reference);
+        return inserted == 1;
+    }
+
+    @Scheduled(fixedDelayString = "${app.payments.callback-inbox.drain-interval-ms:500}")
+    public void drain() {
+        List<Claimed> chunk;
+        do {
+            chunk = jdbcTemplate.query(CLAIM,
+                    (rs, rowNum) -> new Claimed(
+                            rs.getObject("id", UUID.class), rs.getString("payload"), rs.getString("reference")),
+                    claimSeconds, maxAttempts, chunkSize);
+
+            List<UUID> processed = new ArrayList<>(chunk.size());
+            for (Claimed callback : chunk) {
+                try {
+                    transactionTemplate.executeWithoutResult(status ->
+                            mpesaService.processCallback(callback.payload(), callback.reference()));
+                    processed.add(callback.id());
+                } catch (Exception e) {
+                    log.warn("M-Pesa callback {} failed, will retry in {}s", callback.id(), claimSeconds, e);
+                    recordFailure(callback.id(), e);
+                }
+            }
+
+            if (!processed.isEmpty()) {
+                jdbcTemplate.batchUpdate("UPDATE mpesa_callback_inbox SET processed_at = now() WHERE id = ?",
+                        processed, processed.size(), (ps, id) -> ps.setObject(1, id));
+            }
+        } while (chunk.size() == chunkSize);
+    }
+
+    private void recordFailure(UUID id, Exception e) {
+        String message = String.valueOf(e.getMessage());
+        jdbcTemplate.update("UPDATE mpesa_callback_inbox SET attempts = attempts + 1, last_error = ? WHERE id = ?",
+                message.length() > 500 ? message.substring(0, 500) : message, id);
+    }
+
+    private static String sha256(String value) {
+        try {
+            return HexFormat.of().formatHex(
+                    MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
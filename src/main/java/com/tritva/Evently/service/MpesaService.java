@@ -1,15 +1,22 @@
 package com.tritva.Evently.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.tritva.Evently.model.dto.MpesaPaymentRequestDto;
 import com.tritva.Evently.model.dto.MpesaPaymentResponseDto;
 
 public interface MpesaService {
+    // Throws PaymentsUnavailableException while M-Pesa calls are being refused
+    void ensureAvailable();
+
     // Initiate STK Push (Lipa Na M-Pesa Online)
     MpesaPaymentResponseDto initiateSTKPush(MpesaPaymentRequestDto request);
 
     // Get OAuth access token
     String getAccessToken();
 
-    // Process callback from M-Pesa
-    void processCallback(String callbackData);
+    // Process callback from M-Pesa; reference is the one we put on the callback URL, if any
+    void processCallback(String callbackData, String reference);
+
+    // Ask M-Pesa for the outcome of an STK push (STK Query), through the shortcode it was sent from
+    JsonNode queryStkStatus(String shortCode, String checkoutRequestId);
 }
\ No newline at end of file
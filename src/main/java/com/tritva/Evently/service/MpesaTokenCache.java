@@ -0,0 +1,136 @@
+package com.tritva.Evently.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.tritva.Evently.client.DarajaClient;
+import com.tritva.Evently.config.MpesaConfig;
+import com.tritva.Evently.exception.PaymentsUnavailableException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds a Daraja OAuth token per Daraja app, keyed by consumer key, so
+ * shortcodes sharing an app share its token. Tokens are reused until shortly
+ * before {@code expires_in} runs out and are renewed in the background ahead
+ * of that, so purchases normally never wait on {@code /oauth/v1/generate}.
+ * Callers that do need a fetch at the same moment share a single upstream
+ * request.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MpesaTokenCache {
+
+    private final MpesaConfig mpesaConfig;
+    private final DarajaClient darajaClient;
+
+    // Token state by consumer key
+    private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+
+    private record AccessToken(String value, Instant refreshAt, Instant expiresAt) {
+    }
+
+    private static class Slot {
+        private volatile AccessToken current;
+
+        // The fetch in progress, if any; concurrent callers wait on it rather than starting their own
+        private final AtomicReference<CompletableFuture<AccessToken>> inFlight = new AtomicReference<>();
+    }
+
+    public String getToken(MpesaConfig.ShortCode shortCode) {
+        Slot slot = slot(shortCode.getConsumerKey());
+        AccessToken token = slot.current;
+        if (token != null && Instant.now().isBefore(token.expiresAt())) {
+            return token.value();
+        }
+        return fetch(slot, shortCode).value();
+    }
+
+    // Drop a token the API rejected so the next caller fetches a new one
+    public void invalidate(MpesaConfig.ShortCode shortCode, String token) {
+        Slot slot = slot(shortCode.getConsumerKey());
+        AccessToken cached = slot.current;
+        if (cached != null && cached.value().equals(token)) {
+            slot.current = null;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${mpesa.token-check-interval-ms:15000}")
+    public void refreshIfDue() {
+        for (MpesaConfig.ShortCode shortCode : mpesaConfig.resolvedShortCodes()) {
+            Slot slot = slot(shortCode.getConsumerKey());
+            AccessToken token = slot.current;
+            if (token == null || Instant.now().isBefore(token.refreshAt())) {
+                continue;
+            }
+            try {
+                fetch(slot, shortCode);
+            } catch (Exception e) {
+                // The current token is still valid; try again on the next check
+                log.warn("Background M-Pesa token refresh for {} failed, token expires at {}",
+                        shortCode.getShortCode(), token.expiresAt(), e);
+            }
+        }
+    }
+
+    private Slot slot(String consumerKey) {
+        return slots.computeIfAbsent(consumerKey, key -> new Slot());
+    }
+
+    private AccessToken fetch(Slot slot, MpesaConfig.ShortCode shortCode) {
+        CompletableFuture<AccessToken> mine = new CompletableFuture<>();
+        CompletableFuture<AccessToken> running = slot.inFlight.compareAndExchange(null, mine);
+        if (running != null) {
+            return await(running);
+        }
+
+        try {
+            AccessToken token = requestToken(shortCode);
+            slot.current = token;
+            mine.complete(token);
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+        } finally {
+            slot.inFlight.set(null);
+        }
+        return await(mine);
+    }
+
+    private AccessToken requestToken(MpesaConfig.ShortCode shortCode) {
+        try {
+            JsonNode jsonNode = darajaClient.generateToken(shortCode.getConsumerKey(), shortCode.getConsumerSecret());
+            String accessToken = jsonNode.get("access_token").asText();
+            // Daraja sends expires_in as a string of seconds
+            long expiresIn = jsonNode.path("expires_in").asLong(3599);
+
+            Instant now = Instant.now();
+            Instant expiresAt = now.plusSeconds(Math.max(0, expiresIn - mpesaConfig.getTokenExpirySkewSeconds()));
+            Instant refreshAt = now.plusSeconds(Math.max(expiresIn / 2, expiresIn - mpesaConfig.getTokenRefreshAheadSeconds()));
+
+            log.info("M-Pesa access token for {} obtained, valid for {}s", shortCode.getShortCode(), expiresIn);
+            return new AccessToken(accessToken, refreshAt, expiresAt);
+
+        } catch (PaymentsUnavailableException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Failed to get M-Pesa access token for {}", shortCode.getShortCode(), e);
+            throw new RuntimeException("Failed to authenticate with M-Pesa: " + e.getMessage());
+        }
+    }
+
+    private static AccessToken await(CompletableFuture<AccessToken> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+}
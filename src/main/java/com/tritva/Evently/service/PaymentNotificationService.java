@@ -2,6 +2,8 @@ package com.tritva.Evently.service;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
@@ -39,6 +41,20 @@ public class PaymentNotificationService {
         return emitter;
     }
 
+    // Tells the buyer only once the status they are shown is committed
+    public void notifyAfterCommit(String checkoutRequestId, String status, String message) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            notifyPaymentStatus(checkoutRequestId, status, message);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                notifyPaymentStatus(checkoutRequestId, status, message);
+            }
+        });
+    }
+
     public void notifyPaymentStatus(String checkoutRequestId, String status, String message) {
         SseEmitter emitter = emitters.get(checkoutRequestId);
 
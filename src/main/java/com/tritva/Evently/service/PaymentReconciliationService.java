@@ -0,0 +1,235 @@
+package com.tritva.Evently.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.tritva.Evently.event.PaymentSettledEvent;
+import com.tritva.Evently.model.Status;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Settles payments whose callback never arrived. PENDING payments older than
+ * the threshold are walked in ID order, their outcome is asked of M-Pesa
+ * through STK Query on virtual threads (at most {@code concurrency} calls at
+ * once), and each page's results are written in one batch.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PaymentReconciliationService {
+
+    private static final String PAGE_QUERY = """
+            SELECT id, mpesa_checkout_request_id, short_code FROM payments
+            WHERE status = 'PENDING'
+              AND mpesa_checkout_request_id IS NOT NULL
+              AND created_at < ?
+              AND id > ?
+            ORDER BY id
+            LIMIT ?""";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MpesaService mpesaService;
+    private final SeatHoldService seatHoldService;
+    private final PaymentNotificationService notificationService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PaymentStatusCache statusCache;
+
+    // Pushes whose response timed out wait this long for a callback to claim them
+    @Value("${app.payments.unconfirmed-push-seconds:600}")
+    private long unconfirmedPushSeconds;
+
+    // Leave recent payments to their callback
+    @Value("${app.payments.reconciliation.min-age-seconds:180}")
+    private long minAgeSeconds;
+
+    @Value("${app.payments.reconciliation.page-size:200}")
+    private int pageSize;
+
+    // STK Query ResultCodes that mean the buyer will not pay: insufficient funds, busy, expired,
+    // push not delivered, cancelled, unreachable, wrong PIN, ... Anything else is not final
+    @Value("${app.payments.reconciliation.failed-result-codes:1,1001,1019,1025,1032,1037,2001,9999}")
+    private Set<String> failedResultCodes;
+
+    // Parallel STK Query calls; Daraja rate-limits per app
+    @Value("${app.payments.reconciliation.concurrency:8}")
+    private int concurrency;
+
+    private record PendingPayment(UUID id, String checkoutRequestId, String shortCode) {
+    }
+
+    private record Outcome(PendingPayment payment, Status status, String resultDesc) {
+    }
+
+    @Scheduled(fixedDelayString = "${app.payments.reconciliation.interval-ms:60000}")
+    public void reconcile() {
+        expireUnconfirmedPushes();
+
+        LocalDateTime cutoff = LocalDateTime.now().minusSeconds(minAgeSeconds);
+        Semaphore permits = new Semaphore(concurrency);
+        int settled = 0;
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            UUID cursor = new UUID(0L, 0L);
+            while (true) {
+                List<PendingPayment> page = jdbcTemplate.query(PAGE_QUERY,
+                        (rs, rowNum) -> new PendingPayment(
+                                rs.getObject("id", UUID.class),
+                                rs.getString("mpesa_checkout_request_id"),
+                                rs.getString("short_code")),
+                        cutoff, cursor, pageSize);
+                if (page.isEmpty()) {
+                    break;
+                }
+
+                List<Future<Outcome>> queries = new ArrayList<>(page.size());
+                for (PendingPayment payment : page) {
+                    queries.add(executor.submit(() -> {
+                        permits.acquire();
+                        try {
+                            return query(payment);
+                        } finally {
+                            permits.release();
+                        }
+                    }));
+                }
+
+                List<Outcome> outcomes = new ArrayList<>(page.size());
+                for (Future<Outcome> query : queries) {
+                    Outcome outcome = await(query);
+                    if (outcome != null) {
+                        outcomes.add(outcome);
+                    }
+                }
+                settled += settle(outcomes);
+
+                cursor = page.get(page.size() - 1).id();
+                if (page.size() < pageSize) {
+                    break;
+                }
+            }
+        }
+
+        if (settled > 0) {
+            log.info("Reconciled {} pending payment(s) through STK Query", settled);
+        }
+    }
+
+    // Without a checkout ID there is nothing to ask M-Pesa; give the seats back once no callback can claim them
+    private void expireUnconfirmedPushes() {
+        List<UUID> holds = jdbcTemplate.query("""
+                UPDATE payments SET status = 'FAILED', mpesa_result_desc = 'STK push was never confirmed'
+                WHERE status = 'PENDING' AND mpesa_checkout_request_id IS NULL AND created_at < ?
+                RETURNING seat_hold_id""",
+                (rs, rowNum) -> rs.getObject("seat_hold_id", UUID.class),
+                LocalDateTime.now().minusSeconds(unconfirmedPushSeconds));
+        holds.stream().filter(Objects::nonNull).forEach(seatHoldService::releaseHold);
+        if (!holds.isEmpty()) {
+            log.info("Expired {} unconfirmed STK push payment(s)", holds.size());
+        }
+    }
+
+    /**
+     * Asks M-Pesa about one pending payment right away and settles it if the
+     * answer is final. Returns false while the outcome is still unknown.
+     */
+    public boolean reconcile(UUID paymentId, String checkoutRequestId, String shortCode) {
+        Outcome outcome = query(new PendingPayment(paymentId, checkoutRequestId, shortCode));
+        return outcome != null && settle(List.of(outcome)) == 1;
+    }
+
+    // Null while M-Pesa has no final answer yet
+    private Outcome query(PendingPayment payment) {
+        try {
+            JsonNode response = mpesaService.queryStkStatus(payment.shortCode(), payment.checkoutRequestId());
+            JsonNode resultCode = response.get("ResultCode");
+            if (resultCode == null) {
+                return null;
+            }
+            String resultDesc = response.path("ResultDesc").asText(null);
+            if ("0".equals(resultCode.asText())) {
+                return new Outcome(payment, Status.COMPLETED, resultDesc);
+            }
+            if (failedResultCodes.contains(resultCode.asText())) {
+                return new Outcome(payment, Status.FAILED, resultDesc);
+            }
+            // Unknown code: the buyer may still have paid, so keep the payment and its seats
+            log.warn("STK Query for {} returned ResultCode {} ({}); leaving it pending",
+                    payment.checkoutRequestId(), resultCode.asText(), resultDesc);
+            return null;
+
+        } catch (HttpServerErrorException e) {
+            // "The transaction is being processed"
+            return null;
+        } catch (IllegalStateException e) {
+            // Its paybill was removed from the config; left pending for someone to settle by hand
+            log.warn("Skipping STK Query for {}: {}", payment.checkoutRequestId(), e.getMessage());
+            return null;
+        } catch (Exception e) {
+            log.warn("STK Query failed for {}", payment.checkoutRequestId(), e);
+            return null;
+        }
+    }
+
+    private int settle(List<Outcome> outcomes) {
+        if (outcomes.isEmpty()) {
+            return 0;
+        }
+
+        // A callback may have settled some of these meanwhile; the status guard leaves those alone
+        int[] updated = jdbcTemplate.batchUpdate(
+                "UPDATE payments SET status = ?, mpesa_result_desc = ? WHERE id = ? AND status = 'PENDING'",
+                outcomes, outcomes.size(),
+                (ps, outcome) -> {
+                    ps.setString(1, outcome.status().name());
+                    ps.setString(2, outcome.resultDesc());
+                    ps.setObject(3, outcome.payment().id());
+                })[0];
+
+        int settled = 0;
+        for (int i = 0; i < outcomes.size(); i++) {
+            if (updated[i] == 0) {
+                continue;
+            }
+            settled++;
+            Outcome outcome = outcomes.get(i);
+            String checkoutRequestId = outcome.payment().checkoutRequestId();
+
+            if (outcome.status() == Status.FAILED) {
+                seatHoldService.releaseHoldForCheckout(checkoutRequestId);
+            }
+            statusCache.updateStatus(checkoutRequestId, outcome.status());
+            notificationService.notifyPaymentStatus(checkoutRequestId, outcome.status().name(),
+                    Objects.requireNonNullElse(outcome.resultDesc(), outcome.status().name()));
+            eventPublisher.publishEvent(new PaymentSettledEvent(outcome.payment().id(), checkoutRequestId, outcome.status()));
+        }
+        return settled;
+    }
+
+    private static Outcome await(Future<Outcome> query) {
+        try {
+            return query.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+}
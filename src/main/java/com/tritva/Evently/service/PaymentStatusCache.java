@@ -0,0 +1,103 @@
+package com.tritva.Evently.service;
+
+import com.tritva.Evently.model.Status;
+import com.tritva.Evently.model.dto.PaymentDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Payment status by checkout request ID, for the status endpoint that
+ * frontends poll while the buyer enters their PIN. Entries are written when
+ * the STK push is sent and when the payment settles, so polls are answered
+ * from memory. Pending entries expire quickly: a callback handled on another
+ * node cannot update this one, and the short TTL bounds how stale it gets.
+ */
+@Service
+public class PaymentStatusCache {
+
+    @Value("${app.payments.status-cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${app.payments.status-cache.pending-ttl-seconds:5}")
+    private long pendingTtlSeconds;
+
+    @Value("${app.payments.status-cache.settled-ttl-seconds:600}")
+    private long settledTtlSeconds;
+
+    private record Entry(PaymentDto payment, long expiresAt) {
+    }
+
+    // Least recently used first
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    public synchronized PaymentDto get(String checkoutRequestId) {
+        Entry entry = entries.get(checkoutRequestId);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.expiresAt() >= 0) {
+            entries.remove(checkoutRequestId);
+            return null;
+        }
+        return entry.payment();
+    }
+
+    public synchronized void put(String checkoutRequestId, PaymentDto payment) {
+        entries.put(checkoutRequestId, entry(payment));
+    }
+
+    // For rows read from the database; never replaces what a settlement wrote meanwhile
+    public synchronized void putIfAbsent(String checkoutRequestId, PaymentDto payment) {
+        Entry current = entries.get(checkoutRequestId);
+        if (current == null || System.nanoTime() - current.expiresAt() >= 0) {
+            entries.put(checkoutRequestId, entry(payment));
+        }
+    }
+
+    // Waits for the surrounding transaction so a rolled back settlement is never served
+    public void putAfterCommit(String checkoutRequestId, PaymentDto payment) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            put(checkoutRequestId, payment);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                put(checkoutRequestId, payment);
+            }
+        });
+    }
+
+    // Settled without the entity at hand (reconciliation); payments not cached are left alone
+    public synchronized void updateStatus(String checkoutRequestId, Status status) {
+        Entry entry = entries.get(checkoutRequestId);
+        if (entry == null) {
+            return;
+        }
+        PaymentDto current = entry.payment();
+        entries.put(checkoutRequestId, entry(PaymentDto.builder()
+                .id(current.getId())
+                .userId(current.getUserId())
+                .eventId(current.getEventId())
+                .amount(current.getAmount())
+                .transactionId(current.getTransactionId())
+                .status(status)
+                .createdAt(current.getCreatedAt())
+                .build()));
+    }
+
+    private Entry entry(PaymentDto payment) {
+        long ttlSeconds = payment.getStatus() == Status.PENDING ? pendingTtlSeconds : settledTtlSeconds;
+        return new Entry(payment, System.nanoTime() + ttlSeconds * 1_000_000_000L);
+    }
+}
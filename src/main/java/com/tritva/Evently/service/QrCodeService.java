@@ -0,0 +1,168 @@
+package com.tritva.Evently.service;
+
+import com.tritva.Evently.model.entity.Event;
+import com.tritva.Evently.model.entity.Ticket;
+import com.tritva.Evently.repository.TicketRepository;
+import com.tritva.Evently.util.QrRenderer;
+import com.tritva.Evently.util.TicketPayloadSigner;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class QrCodeService {
+
+    private final TicketRepository ticketRepository;
+    private final QrImageStore qrImageStore;
+    private final QrRenderer qrRenderer;
+    private final TicketPayloadSigner ticketPayloadSigner;
+
+    // Signed payloads stop verifying this long after the event ends
+    @Value("${app.tickets.signing.valid-hours-after-event:12}")
+    private long validHoursAfterEvent;
+
+    private static final int QR_SIZE = 300;
+
+    // Number of ticket → image key entries kept in memory
+    @Value("${app.qr.cache.max-entries:10000}")
+    private int cacheMaxEntries;
+
+    // Rotation on another node only evicts its own cache, so entries here go stale after this long
+    @Value("${app.qr.cache.ttl-seconds:30}")
+    private long cacheTtlSeconds;
+
+    // Image keys by ticket ID, least recently used first
+    private final LinkedHashMap<UUID, CachedKey> keys = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, CachedKey> eldest) {
+            return size() > cacheMaxEntries;
+        }
+    };
+
+    private record CachedKey(String key, long expiresAtNanos) {
+    }
+
+    public record QrImage(String key, Path file) {
+        // The key is a hash of the PNG bytes, so it is a strong validator as-is
+        public String etag() {
+            return "\"" + key + "\"";
+        }
+    }
+
+    // QR code content: signed payload a scanner can check with the public key alone.
+    // The ticket needs its ID and a loaded event.
+    public String qrContent(Ticket ticket) {
+        return qrContent(ticket.getEvent(), ticket.getId(), ticket.getVerificationCode());
+    }
+
+    public String qrContent(Event event, UUID ticketId, String verificationCode) {
+        return ticketPayloadSigner.sign(event.getId(), ticketId, expiresAt(event), verificationCode);
+    }
+
+    // Render the ticket's QR code into the image store and return its key
+    public String storeImage(Ticket ticket) {
+        return storeImage(ticket.getEvent(), ticket.getId(), ticket.getVerificationCode());
+    }
+
+    public String storeImage(Event event, UUID ticketId, String verificationCode) {
+        return qrImageStore.put(renderPng(qrContent(event, ticketId, verificationCode)));
+    }
+
+    // Public path that serves a ticket's QR image
+    public String imageUrl(UUID ticketId) {
+        return "/api/tickets/" + ticketId + "/qr";
+    }
+
+    public String renderSvg(UUID ticketId) {
+        Ticket ticket = ticketRepository.findWithEventById(ticketId)
+                .orElseThrow(() -> new EntityNotFoundException("Ticket not found with ID: " + ticketId));
+        return qrRenderer.svg(qrContent(ticket));
+    }
+
+    /**
+     * Locates the stored image for a ticket, rendering it into the store if the
+     * file is missing. Never writes to the database.
+     */
+    public QrImage getTicketQrImage(UUID ticketId) {
+        String key = cachedKey(ticketId);
+        if (key == null || !qrImageStore.contains(key)) {
+            Ticket ticket = ticketRepository.findWithEventById(ticketId)
+                    .orElseThrow(() -> new EntityNotFoundException("Ticket not found with ID: " + ticketId));
+
+            key = ticket.getQrCodeKey();
+            if (!qrImageStore.contains(key)) {
+                key = storeImage(ticket);
+            }
+            rememberKey(ticketId, key);
+        }
+        return new QrImage(key, qrImageStore.pathFor(key));
+    }
+
+    // Stored size, for handing the file to sendfile without reading it
+    public long pngSize(QrImage image) {
+        long size = qrImageStore.size(image.key());
+        if (size < 0) {
+            throw new IllegalStateException("QR image " + image.key() + " is missing from the store");
+        }
+        return size;
+    }
+
+    public ByteBuffer readPng(QrImage image) {
+        ByteBuffer png = qrImageStore.read(image.key());
+        if (png == null) {
+            throw new IllegalStateException("QR image " + image.key() + " is missing from the store");
+        }
+        return png;
+    }
+
+    // Drop the cached key after the ticket's codes change
+    public synchronized void evict(UUID ticketId) {
+        keys.remove(ticketId);
+    }
+
+    public byte[] renderPng(String content) {
+        try {
+            return qrRenderer.png(content, QR_SIZE);
+        } catch (Exception e) {
+            log.error("Error rendering QR code", e);
+            throw new RuntimeException("Failed to generate QR code: " + e.getMessage());
+        }
+    }
+
+    private Instant expiresAt(Event event) {
+        LocalDateTime end = event.getEndDateTime() != null ? event.getEndDateTime() : event.getStartDateTime();
+        return end.atZone(ZoneId.systemDefault()).toInstant()
+                .plus(validHoursAfterEvent, ChronoUnit.HOURS);
+    }
+
+    private synchronized String cachedKey(UUID ticketId) {
+        CachedKey cached = keys.get(ticketId);
+        if (cached == null) {
+            return null;
+        }
+        if (System.nanoTime() - cached.expiresAtNanos() > 0) {
+            keys.remove(ticketId);
+            return null;
+        }
+        return cached.key();
+    }
+
+    private synchronized void rememberKey(UUID ticketId, String key) {
+        keys.put(ticketId, new CachedKey(key, System.nanoTime() + TimeUnit.SECONDS.toNanos(cacheTtlSeconds)));
+    }
+}
@@ -0,0 +1,153 @@
+package com.tritva.Evently.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed store for rendered QR images. Each PNG lives at
+ * {@code <root>/<first two hex chars>/<sha256>.png}; the hash is the only thing
+ * the ticket row keeps. Files are immutable once written, so recently read
+ * images are kept on the heap. They are around a kilobyte each, far below a
+ * page, so mapping them would waste most of each mapping and could run into
+ * the kernel's limit on mappings per process.
+ */
+@Service
+@Slf4j
+public class QrImageStore {
+
+    private static final Pattern KEY = Pattern.compile("[0-9a-f]{64}");
+
+    @Value("${app.qr.storage.path}")
+    private String storagePath;
+
+    // Upper bound on the image bytes kept in memory
+    @Value("${app.qr.cache.max-bytes:67108864}")
+    private long maxCachedBytes;
+
+    private Path root;
+
+    // Image bytes by key, least recently used first
+    private final LinkedHashMap<String, byte[]> cached = new LinkedHashMap<>(256, 0.75f, true);
+    private long cachedBytes;
+
+    @PostConstruct
+    void init() throws IOException {
+        root = Paths.get(storagePath).toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        log.info("QR image store at {}", root);
+    }
+
+    /**
+     * Stores the image if it is not already present and returns its key.
+     */
+    public String put(byte[] png) {
+        String key = keyOf(png);
+        Path target = pathFor(key);
+        if (Files.exists(target)) {
+            return key;
+        }
+
+        try {
+            Files.createDirectories(target.getParent());
+            // Write aside then rename, so readers never see a partial file
+            Path temp = Files.createTempFile(target.getParent(), key, ".tmp");
+            try {
+                Files.write(temp, png);
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // Another writer stored the same content first
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            return key;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to store QR image " + key, e);
+        }
+    }
+
+    public boolean contains(String key) {
+        return key != null && KEY.matcher(key).matches() && Files.exists(pathFor(key));
+    }
+
+    public Path pathFor(String key) {
+        if (!KEY.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid QR image key: " + key);
+        }
+        return root.resolve(key.substring(0, 2)).resolve(key + ".png");
+    }
+
+    /**
+     * Read-only view over the stored image, or {@code null} if it is missing.
+     */
+    public ByteBuffer read(String key) {
+        byte[] png = cached(key);
+        if (png == null) {
+            try {
+                png = Files.readAllBytes(pathFor(key));
+            } catch (NoSuchFileException e) {
+                return null;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read QR image " + key, e);
+            }
+            remember(key, png);
+        }
+        // Callers cannot change the cached bytes
+        return ByteBuffer.wrap(png).asReadOnlyBuffer();
+    }
+
+    // Size of the stored image without reading it, or -1 if it is missing
+    public long size(String key) {
+        try {
+            return Files.size(pathFor(key));
+        } catch (NoSuchFileException e) {
+            return -1;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read QR image " + key, e);
+        }
+    }
+
+    private synchronized byte[] cached(String key) {
+        return cached.get(key);
+    }
+
+    private synchronized void remember(String key, byte[] png) {
+        byte[] previous = cached.put(key, png);
+        if (previous != null) {
+            cachedBytes -= previous.length;
+        }
+        cachedBytes += png.length;
+
+        Iterator<Map.Entry<String, byte[]>> eldest = cached.entrySet().iterator();
+        while (cachedBytes > maxCachedBytes && eldest.hasNext()) {
+            cachedBytes -= eldest.next().getValue().length;
+            eldest.remove();
+        }
+    }
+
+    private static String keyOf(byte[] png) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(png));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.tritva.Evently.service;
+
+import com.tritva.Evently.model.dto.QrRegenerationStatusDto;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.UUID;
+
+public interface QrRegenerationService {
+    // Start re-rendering every QR code of an event in the background, optionally with new verification codes.
+    // Only admins and the event's organiser may start one.
+    QrRegenerationStatusDto start(UUID eventId, boolean rotateCodes, UserDetails requester);
+
+    // Progress of the event's latest regeneration
+    QrRegenerationStatusDto status(UUID eventId);
+}
@@ -0,0 +1,25 @@
+package com.tritva.Evently.service;
+
+import com.tritva.Evently.model.entity.SeatHold;
+
+import java.util.UUID;
+
+public interface SeatHoldService {
+    // Claim seats for a buyer until the payment window closes
+    SeatHold placeHold(UUID eventId, int quantity);
+
+    // Link a hold to the STK push that will pay for it
+    void attachCheckout(UUID holdId, String checkoutRequestId);
+
+    // Turn an active hold into sold seats; false if it already expired or was released
+    boolean convertHold(UUID holdId);
+
+    // Give the held seats back
+    void releaseHold(UUID holdId);
+
+    // Give the held seats back for a failed or cancelled payment
+    void releaseHoldForCheckout(String checkoutRequestId);
+
+    // Free holds whose TTL has passed, unless their payment is still pending
+    void sweepExpiredHolds();
+}
@@ -0,0 +1,297 @@
+package com.tritva.Evently.service;
+
+import com.tritva.Evently.model.entity.Event;
+import com.tritva.Evently.repository.EventRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Supplier;
+
+/**
+ * Claims and releases seats against Event.ticketsSold.
+ * Events flagged as hot sales are served from blocks of seats this node has
+ * already claimed, so most purchases never touch the event row. Once the row
+ * has less than a block left, each node hands its seats back and claims
+ * straight from the row, so no seat sits in one node's block while buyers on
+ * another are told the event is sold out.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SeatInventoryService {
+
+    private final EventRepository eventRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    // Local seat blocks for hot events, by event ID
+    private final Map<UUID, SeatBlockPool> pools = new ConcurrentHashMap<>();
+
+    @Value("${app.inventory.hot.block-size:100}")
+    private int blockSize;
+
+    @Value("${app.inventory.hot.stripes:8}")
+    private int stripeCount;
+
+    @Value("${app.inventory.hot.idle-return-ms:30000}")
+    private long idleReturnMs;
+
+    public boolean claim(Event event, int quantity) {
+        if (!event.isHotSale()) {
+            return eventRepository.claimTickets(event.getId(), quantity) == 1;
+        }
+
+        SeatBlockPool pool = poolFor(event.getId());
+        if (!pool.lastSeats) {
+            if (pool.tryTake(quantity) || refillAndTake(event.getId(), pool, quantity)) {
+                // The local seats are not part of the caller's transaction, so hand them back on rollback
+                afterCompletion(false, () -> putBack(event.getId(), quantity));
+                return true;
+            }
+            if (!pool.lastSeats) {
+                return false;
+            }
+        }
+
+        // Last seats: straight from the row, within the caller's transaction
+        return eventRepository.claimTickets(event.getId(), quantity) == 1;
+    }
+
+    public void release(Event event, int quantity) {
+        if (!event.isHotSale() || poolFor(event.getId()).lastSeats) {
+            eventRepository.releaseTickets(event.getId(), quantity);
+            return;
+        }
+
+        // Back into the local block once the caller commits; the next reconcile returns it
+        afterCompletion(true, () -> putBack(event.getId(), quantity));
+    }
+
+    /**
+     * Returns idle blocks to the database, hands back the blocks of events whose row
+     * is running out, and raises any counter that fell behind the tickets and holds
+     * that actually exist.
+     */
+    @Scheduled(fixedDelayString = "${app.inventory.hot.reconcile-interval-ms:60000}")
+    public void reconcile() {
+        long now = System.currentTimeMillis();
+
+        pools.forEach((eventId, pool) -> {
+            Optional<Boolean> hotSale = eventRepository.findById(eventId).map(Event::isHotSale);
+            if (hotSale.isEmpty() || !hotSale.get() || now - pool.lastUsed > idleReturnMs) {
+                pools.remove(eventId, pool);
+                returnSeats(eventId, pool.drain());
+            } else if (!pool.lastSeats && eventRepository.findRemainingSeatsById(eventId) < blockSize) {
+                // Another node took the last block; buyers there may need the seats held here
+                switchToLastSeats(eventId, pool);
+            }
+
+            if (hotSale.isPresent()) {
+                repairCounter(eventId);
+            }
+        });
+    }
+
+    // Before any sale on this node, so no purchase claims against a counter that is behind
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillCounters() {
+        int updated = inNewTransaction(eventRepository::backfillTicketsSold);
+        if (updated > 0) {
+            log.warn("Raised the seat counter of {} event(s) to match issued tickets and held seats", updated);
+        }
+    }
+
+    @PreDestroy
+    public void returnAllBlocks() {
+        pools.forEach((eventId, pool) -> returnSeats(eventId, pool.drain()));
+        pools.clear();
+    }
+
+    private boolean refillAndTake(UUID eventId, SeatBlockPool pool, int quantity) {
+        // One refill per event at a time on this node; others retry the stripes first
+        synchronized (pool) {
+            if (pool.tryTake(quantity)) {
+                return true;
+            }
+
+            int granted = Math.max(blockSize, quantity);
+            if (inNewTransaction(() -> eventRepository.claimTickets(eventId, granted)) == 0) {
+                // Not a full block left: the seats still here go back so the purchase can use them with the row's
+                switchToLastSeats(eventId, pool);
+                return false;
+            }
+
+            pool.add(granted);
+            log.debug("Took a block of {} seats for hot event {}", granted, eventId);
+            boolean taken = pool.tryTake(quantity);
+
+            // Reconcile dropped this pool while we were refilling it
+            if (pools.get(eventId) != pool) {
+                returnSeats(eventId, pool.drain());
+            }
+            return taken;
+        }
+    }
+
+    private SeatBlockPool poolFor(UUID eventId) {
+        return pools.computeIfAbsent(eventId, id -> new SeatBlockPool(stripeCount));
+    }
+
+    private void switchToLastSeats(UUID eventId, SeatBlockPool pool) {
+        // Flagged before draining, so seats put back meanwhile are drained by whoever puts them back
+        pool.lastSeats = true;
+        returnSeats(eventId, pool.drain());
+        log.info("Hot event {} is down to its last seats; claiming them from the event row", eventId);
+    }
+
+    private void putBack(UUID eventId, int seats) {
+        SeatBlockPool pool = poolFor(eventId);
+        pool.add(seats);
+        if (pool.lastSeats) {
+            returnSeats(eventId, pool.drain());
+        }
+    }
+
+    private void returnSeats(UUID eventId, int seats) {
+        if (seats > 0) {
+            inNewTransaction(() -> eventRepository.releaseTickets(eventId, seats));
+            log.info("Returned {} unused seats for hot event {}", seats, eventId);
+        }
+    }
+
+    // Anything above tickets + holds is sitting in seat blocks, so the counter is only ever raised
+    private void repairCounter(UUID eventId) {
+        if (inNewTransaction(() -> eventRepository.repairTicketsSold(eventId)) > 0) {
+            log.error("Seat counter for event {} was behind its tickets and held seats; raised it", eventId);
+        }
+    }
+
+    private <T> T inNewTransaction(Supplier<T> work) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return template.execute(status -> work.get());
+    }
+
+    private void afterCompletion(boolean onCommit, Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            if (onCommit) {
+                action.run();
+            }
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if ((status == STATUS_COMMITTED) == onCommit) {
+                    action.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Seats spread over a few counters so concurrent buyers rarely CAS the same one.
+     */
+    private static final class SeatBlockPool {
+        private final AtomicIntegerArray stripes;
+        private volatile long lastUsed = System.currentTimeMillis();
+        // Set once the row has less than a block left; claims then go to the row
+        private volatile boolean lastSeats;
+
+        SeatBlockPool(int stripeCount) {
+            this.stripes = new AtomicIntegerArray(Math.max(1, stripeCount));
+        }
+
+        boolean tryTake(int quantity) {
+            lastUsed = System.currentTimeMillis();
+            int n = stripes.length();
+            int start = ThreadLocalRandom.current().nextInt(n);
+
+            for (int i = 0; i < n; i++) {
+                int index = (start + i) % n;
+                int current;
+                while ((current = stripes.get(index)) >= quantity) {
+                    if (stripes.compareAndSet(index, current, current - quantity)) {
+                        return true;
+                    }
+                }
+            }
+            return takeAcross(start, quantity);
+        }
+
+        // No single stripe is big enough: gather the remainders, or put them all back
+        private boolean takeAcross(int start, int quantity) {
+            int n = stripes.length();
+            int[] taken = new int[n];
+            int needed = quantity;
+
+            for (int i = 0; i < n && needed > 0; i++) {
+                int index = (start + i) % n;
+                int current;
+                while ((current = stripes.get(index)) > 0) {
+                    int take = Math.min(current, needed);
+                    if (stripes.compareAndSet(index, current, current - take)) {
+                        taken[index] = take;
+                        needed -= take;
+                        break;
+                    }
+                }
+            }
+
+            if (needed == 0) {
+                return true;
+            }
+            for (int i = 0; i < n; i++) {
+                if (taken[i] > 0) {
+                    stripes.addAndGet(i, taken[i]);
+                }
+            }
+            return false;
+        }
+
+        void add(int seats) {
+            int n = stripes.length();
+            int share = seats / n;
+            int extra = seats % n;
+            for (int i = 0; i < n; i++) {
+                int amount = share + (i < extra ? 1 : 0);
+                if (amount > 0) {
+                    stripes.addAndGet(i, amount);
+                }
+            }
+        }
+
+        int drain() {
+            int total = 0;
+            for (int i = 0; i < stripes.length(); i++) {
+                total += stripes.getAndSet(i, 0);
+            }
+            return total;
+        }
+
+        int available() {
+            int total = 0;
+            for (int i = 0; i < stripes.length(); i++) {
+                total += stripes.get(i);
+            }
+            return total;
+        }
+    }
+}
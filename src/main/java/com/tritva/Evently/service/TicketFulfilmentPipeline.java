@@ -0,0 +1,266 @@
+package com.tritva.Evently.service;
+
+import com.tritva.Evently.model.FulfilmentStatus;
+import com.tritva.Evently.model.entity.Ticket;
+import com.tritva.Evently.repository.TicketRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finishes tickets after the seats are committed: render QR codes, then email them.
+ * Each stage has its own workers and a bounded queue. Progress is recorded on the
+ * ticket rows, so the queues only hold work in memory: whatever fails, finds a
+ * full queue or is lost to a restart is picked up by the retry sweep once the
+ * ticket's due time passes. Tickets that keep failing are parked as FAILED.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TicketFulfilmentPipeline {
+
+    // Claims due tickets for this node; SKIP LOCKED lets several nodes sweep side by side
+    private static final String CLAIM = """
+            UPDATE tickets SET fulfilment_due_at = ?
+            WHERE id IN (
+                SELECT id FROM tickets
+                WHERE fulfilment_status IN ('PENDING', 'RENDERED')
+                  AND fulfilment_due_at < ?
+                ORDER BY fulfilment_due_at
+                LIMIT ?
+                FOR UPDATE SKIP LOCKED)
+            RETURNING id, fulfilment_status, delivery_email, payment_id""";
+
+    // Backs off exponentially; parks the ticket once it runs out of attempts
+    private static final String RECORD_FAILURE = """
+            UPDATE tickets SET fulfilment_attempts = fulfilment_attempts + 1,
+                fulfilment_due_at = ? + make_interval(secs => ? * power(2, LEAST(fulfilment_attempts, 6))),
+                fulfilment_status = CASE WHEN fulfilment_attempts + 1 >= ? THEN 'FAILED' ELSE fulfilment_status END
+            WHERE id = ?""";
+
+    private final TicketRepository ticketRepository;
+    private final QrCodeService qrCodeService;
+    private final EmailService emailService;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.fulfilment.render.threads:4}")
+    private int renderThreads;
+
+    @Value("${app.fulfilment.render.queue-capacity:1000}")
+    private int renderQueueCapacity;
+
+    @Value("${app.fulfilment.email.threads:4}")
+    private int emailThreads;
+
+    @Value("${app.fulfilment.email.queue-capacity:1000}")
+    private int emailQueueCapacity;
+
+    // How long tickets in the pipeline are left alone by the retry sweep
+    @Value("${app.fulfilment.lease-seconds:120}")
+    private long leaseSeconds;
+
+    // First retry delay; doubles with every failed attempt
+    @Value("${app.fulfilment.retry-delay-seconds:30}")
+    private long retryDelaySeconds;
+
+    @Value("${app.fulfilment.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${app.fulfilment.sweep-batch-size:200}")
+    private int sweepBatchSize;
+
+    private ThreadPoolExecutor renderStage;
+    private ThreadPoolExecutor emailStage;
+
+    private record Claimed(UUID id, FulfilmentStatus status, String email, UUID paymentId) {
+    }
+
+    private record Batch(UUID purchase, FulfilmentStatus status, String email) {
+    }
+
+    @PostConstruct
+    void start() {
+        renderStage = newStage("qr-render", renderThreads, renderQueueCapacity);
+        emailStage = newStage("ticket-email", emailThreads, emailQueueCapacity);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        // Anything still queued stays unfinished in the database for the next sweep
+        renderStage.shutdown();
+        renderStage.awaitTermination(30, TimeUnit.SECONDS);
+        emailStage.shutdown();
+        emailStage.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    // Due time for tickets entering the pipeline now
+    public LocalDateTime leaseDeadline() {
+        return LocalDateTime.now().plusSeconds(leaseSeconds);
+    }
+
+    /**
+     * Queues freshly saved tickets for QR rendering and delivery.
+     * Runs after the caller's transaction commits so workers can see the rows.
+     */
+    public void submit(List<UUID> ticketIds, String email) {
+        Runnable job = () -> renderStage.execute(() -> render(ticketIds, email));
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            job.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                job.run();
+            }
+        });
+    }
+
+    /**
+     * Re-queues tickets whose render or delivery failed, was dropped or outlived a restart.
+     */
+    @Scheduled(fixedDelayString = "${app.fulfilment.sweep-interval-ms:30000}")
+    public void retryUnfinished() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Claimed> claimed = jdbcTemplate.query(CLAIM,
+                (rs, rowNum) -> new Claimed(
+                        rs.getObject("id", UUID.class),
+                        FulfilmentStatus.valueOf(rs.getString("fulfilment_status")),
+                        rs.getString("delivery_email"),
+                        rs.getObject("payment_id", UUID.class)),
+                now.plusSeconds(leaseSeconds), now, sweepBatchSize);
+        if (claimed.isEmpty()) {
+            return;
+        }
+
+        // Tickets bought together go out in one email again
+        Map<Batch, List<UUID>> batches = new LinkedHashMap<>();
+        for (Claimed ticket : claimed) {
+            UUID purchase = ticket.paymentId() != null ? ticket.paymentId() : ticket.id();
+            batches.computeIfAbsent(new Batch(purchase, ticket.status(), ticket.email()),
+                    key -> new ArrayList<>()).add(ticket.id());
+        }
+
+        batches.forEach((batch, ids) -> {
+            if (batch.status() == FulfilmentStatus.PENDING) {
+                renderStage.execute(() -> render(ids, batch.email()));
+            } else {
+                emailStage.execute(() -> redeliver(ids, batch.email()));
+            }
+        });
+        log.info("Retrying fulfilment of {} ticket(s)", claimed.size());
+    }
+
+    private void render(List<UUID> ticketIds, String email) {
+        List<Ticket> tickets;
+        try {
+            tickets = ticketRepository.findAllWithEventByIdIn(ticketIds);
+            if (tickets.isEmpty()) {
+                return;
+            }
+
+            for (Ticket ticket : tickets) {
+                ticket.setQrCodeKey(qrCodeService.storeImage(ticket));
+            }
+
+            // Rendered tickets get a fresh lease for the email stage
+            LocalDateTime dueAt = leaseDeadline();
+            jdbcTemplate.batchUpdate(
+                    "UPDATE tickets SET qr_code_key = ?, fulfilment_status = 'RENDERED', fulfilment_due_at = ? WHERE id = ?",
+                    tickets, tickets.size(),
+                    (ps, ticket) -> {
+                        ps.setString(1, ticket.getQrCodeKey());
+                        ps.setObject(2, dueAt);
+                        ps.setObject(3, ticket.getId());
+                    });
+
+            log.info("Rendered {} QR code(s)", tickets.size());
+        } catch (Exception e) {
+            log.error("Failed to render QR codes for tickets {}", ticketIds, e);
+            recordFailure(ticketIds);
+            return;
+        }
+
+        emailStage.execute(() -> deliver(tickets, email));
+    }
+
+    private void redeliver(List<UUID> ticketIds, String email) {
+        try {
+            deliver(ticketRepository.findAllWithEventByIdIn(ticketIds), email);
+        } catch (Exception e) {
+            log.error("Failed to load tickets {} for delivery", ticketIds, e);
+            recordFailure(ticketIds);
+        }
+    }
+
+    private void deliver(List<Ticket> tickets, String email) {
+        if (tickets.isEmpty()) {
+            return;
+        }
+        List<UUID> ids = tickets.stream().map(Ticket::getId).toList();
+        try {
+            // Nowhere to send it (tickets issued without an email); rendering was the last step
+            if (email != null) {
+                emailService.sendTicketsEmail(email, tickets);
+            }
+            jdbcTemplate.batchUpdate("UPDATE tickets SET fulfilment_status = 'DELIVERED' WHERE id = ?",
+                    ids, ids.size(), (ps, id) -> ps.setObject(1, id));
+        } catch (Exception e) {
+            log.error("Failed to deliver {} ticket(s) to {}", tickets.size(), email, e);
+            recordFailure(ids);
+        }
+    }
+
+    private void recordFailure(List<UUID> ticketIds) {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            jdbcTemplate.batchUpdate(RECORD_FAILURE, ticketIds, ticketIds.size(), (ps, id) -> {
+                ps.setObject(1, now);
+                ps.setLong(2, retryDelaySeconds);
+                ps.setInt(3, maxAttempts);
+                ps.setObject(4, id);
+            });
+        } catch (Exception e) {
+            // The lease still runs out, so the sweep retries them anyway
+            log.error("Could not record fulfilment failure for tickets {}", ticketIds, e);
+        }
+    }
+
+    private ThreadPoolExecutor newStage(String name, int threads, int queueCapacity) {
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                leaveForSweep(name));
+    }
+
+    // Never runs work on the submitting thread; the rows stay due and the sweep resubmits them
+    private RejectedExecutionHandler leaveForSweep(String name) {
+        return (runnable, executor) ->
+                log.warn("{} stage is saturated, leaving the work for the retry sweep", name);
+    }
+}
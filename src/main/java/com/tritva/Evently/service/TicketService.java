@@ -10,8 +10,8 @@ public interface TicketService {
     // Buy or create a new ticket for an event
     TicketDto createTicket(TicketDto ticketDto);
 
-    // Create ticket after successful payment
-    TicketDto createTicketAfterPayment(TicketRequestDto request, String email);
+    // Create the paid-for tickets after successful payment
+    List<TicketDto> createTicketsAfterPayment(TicketRequestDto request, String email);
 
     // Get a ticket by its ID
     TicketDto getTicketById(UUID id);
@@ -0,0 +1,291 @@
+package com.tritva.Evently.service;
+
+import com.tritva.Evently.exception.QueueAdmissionException;
+import com.tritva.Evently.model.dto.QueueStatusDto;
+import com.tritva.Evently.model.entity.Event;
+import com.tritva.Evently.repository.EventRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Virtual waiting room for events with an admission rate.
+ * Each event's queue is two counters: how many tokens were handed out and how many were let through.
+ * Tokens are signed, so checking a position needs no lookup beyond the two counters.
+ * Each queue has a random generation baked into its tokens, so tokens from a queue that
+ * was closed and later reopened for the same event are refused.
+ *
+ * <p>Queues live in memory, so every app instance runs its own queue for an event and
+ * only honours the tokens it handed out. The load balancer must keep a buyer on one
+ * instance (sticky sessions); a token taken to another instance is refused there as
+ * a closed queue. With {@code app.waiting-room.node-count} instances each one admits
+ * an equal share of the event's rate, so together they admit the rate the organiser set.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class WaitingRoomService {
+
+    private static final int TOKEN_BYTES = 16 + 8 + 8;
+    private static final int SIGNATURE_BYTES = 16;
+
+    private final EventRepository eventRepository;
+
+    private final Map<UUID, EventQueue> queues = new ConcurrentHashMap<>();
+
+    // Events known to have no waiting room, until when; spares purchases an event lookup
+    private final Map<UUID, Long> noWaitingRoomUntil = new ConcurrentHashMap<>();
+
+    // Dedicated key; there is deliberately no default
+    @Value("${app.waiting-room.secret}")
+    private String secret;
+
+    @Value("${app.waiting-room.flag-cache-ms:30000}")
+    private long flagCacheMs;
+
+    // How long an admitted token stays valid, in seconds
+    @Value("${app.waiting-room.admission-window-seconds:120}")
+    private long admissionWindowSeconds;
+
+    @Value("${app.waiting-room.idle-queue-ms:600000}")
+    private long idleQueueMs;
+
+    // App instances running waiting rooms side by side
+    @Value("${app.waiting-room.node-count:1}")
+    private int nodeCount;
+
+    private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
+
+    @PostConstruct
+    void checkSecret() {
+        if (secret == null || secret.getBytes(StandardCharsets.UTF_8).length < 32) {
+            throw new IllegalStateException("app.waiting-room.secret must be set to at least 32 bytes");
+        }
+    }
+
+    public QueueStatusDto join(UUID eventId) {
+        EventQueue queue = queueFor(eventId);
+        if (queue == null) {
+            // No waiting room for this event: go straight through
+            return QueueStatusDto.builder().eventId(eventId).position(0).admitted(true).build();
+        }
+
+        long sequence = queue.issued.incrementAndGet();
+        queue.lastJoin = System.currentTimeMillis();
+        return status(eventId, sequence, queue, sign(eventId, queue.generation, sequence));
+    }
+
+    public QueueStatusDto status(String token) {
+        ByteBuffer payload = verify(token);
+        UUID eventId = new UUID(payload.getLong(), payload.getLong());
+        long generation = payload.getLong();
+        long sequence = payload.getLong();
+
+        EventQueue queue = queues.get(eventId);
+        if (queue == null || queue.generation != generation) {
+            throw new QueueAdmissionException("This queue has closed. Please join again.");
+        }
+        return status(eventId, sequence, queue, token);
+    }
+
+    /**
+     * Lets a purchase through if the event has no waiting room, or if the token
+     * has been admitted and not used yet. Each token buys once.
+     */
+    public void admit(UUID eventId, String token) {
+        EventQueue queue = queueFor(eventId);
+        if (queue == null) {
+            return;
+        }
+        if (token == null || token.isBlank()) {
+            throw new QueueAdmissionException("This event has a waiting room. Please join the queue first.");
+        }
+
+        ByteBuffer payload = verify(token);
+        UUID tokenEventId = new UUID(payload.getLong(), payload.getLong());
+        long generation = payload.getLong();
+        long sequence = payload.getLong();
+
+        if (!eventId.equals(tokenEventId)) {
+            throw new QueueAdmissionException("Queue token is for a different event");
+        }
+        if (queue.generation != generation) {
+            throw new QueueAdmissionException("This queue has closed. Please join again.");
+        }
+        long admitted = queue.admitted.get();
+        if (sequence > admitted) {
+            throw new QueueAdmissionException("It is not your turn yet. Position in queue: " + (sequence - admitted));
+        }
+        if (sequence <= admitted - queue.window) {
+            throw new QueueAdmissionException("Your turn has expired. Please join the queue again.");
+        }
+        if (!queue.used.add(sequence)) {
+            throw new QueueAdmissionException("This queue token has already been used");
+        }
+    }
+
+    // Give a token back when the purchase it admitted failed before payment
+    public void release(UUID eventId, String token) {
+        EventQueue queue = queues.get(eventId);
+        if (queue != null && token != null) {
+            ByteBuffer payload = verify(token);
+            payload.position(16);
+            if (payload.getLong() == queue.generation) {
+                queue.used.remove(payload.getLong());
+            }
+        }
+    }
+
+    // The event's waiting room settings changed; look them up again on the next purchase
+    public void forget(UUID eventId) {
+        noWaitingRoomUntil.remove(eventId);
+    }
+
+    @Scheduled(fixedRate = 1000)
+    public void admitNextBatch() {
+        long now = System.currentTimeMillis();
+        noWaitingRoomUntil.values().removeIf(until -> until < now);
+
+        queues.forEach((eventId, queue) -> {
+            // A share below one buyer per second builds up over several ticks
+            queue.credit += queue.rate;
+            long batch = (long) queue.credit;
+            queue.credit -= batch;
+
+            long issued = queue.issued.get();
+            long admitted = queue.admitted.updateAndGet(current -> Math.min(issued, current + batch));
+
+            // Forget used tokens that have left the admission window anyway
+            long expiredBelow = admitted - queue.window;
+            queue.used.removeIf(sequence -> sequence <= expiredBelow);
+
+            if (admitted == issued && now - queue.lastJoin > idleQueueMs) {
+                queues.remove(eventId, queue);
+                log.info("Closed idle waiting room for event {}", eventId);
+            }
+        });
+    }
+
+    private EventQueue queueFor(UUID eventId) {
+        EventQueue queue = queues.get(eventId);
+        if (queue != null) {
+            return queue;
+        }
+        Long until = noWaitingRoomUntil.get(eventId);
+        if (until != null && until >= System.currentTimeMillis()) {
+            return null;
+        }
+
+        Event event = eventRepository.findById(eventId)
+                .orElseThrow(() -> new EntityNotFoundException("Event not found with ID: " + eventId));
+        Integer rate = event.getAdmissionRatePerSecond();
+        if (rate == null || rate <= 0) {
+            noWaitingRoomUntil.put(eventId, System.currentTimeMillis() + flagCacheMs);
+            return null;
+        }
+        double share = (double) rate / Math.max(1, nodeCount);
+        return queues.computeIfAbsent(eventId, id -> {
+            log.info("Opened waiting room for event {} admitting {} buyers per second on this node",
+                    event.getName(), share);
+            return new EventQueue(share, (long) Math.ceil(share * admissionWindowSeconds));
+        });
+    }
+
+    private QueueStatusDto status(UUID eventId, long sequence, EventQueue queue, String token) {
+        long admitted = queue.admitted.get();
+        return QueueStatusDto.builder()
+                .token(token)
+                .eventId(eventId)
+                .position(Math.max(0, sequence - admitted))
+                .admitted(sequence <= admitted)
+                .build();
+    }
+
+    private String sign(UUID eventId, long generation, long sequence) {
+        ByteBuffer buffer = ByteBuffer.allocate(TOKEN_BYTES + SIGNATURE_BYTES);
+        buffer.putLong(eventId.getMostSignificantBits())
+                .putLong(eventId.getLeastSignificantBits())
+                .putLong(generation)
+                .putLong(sequence);
+
+        Mac mac = macs.get();
+        mac.update(buffer.array(), 0, TOKEN_BYTES);
+        buffer.put(mac.doFinal(), 0, SIGNATURE_BYTES);
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    private ByteBuffer verify(String token) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            throw new QueueAdmissionException("Invalid queue token");
+        }
+        if (bytes.length != TOKEN_BYTES + SIGNATURE_BYTES) {
+            throw new QueueAdmissionException("Invalid queue token");
+        }
+
+        Mac mac = macs.get();
+        mac.update(bytes, 0, TOKEN_BYTES);
+        byte[] expected = mac.doFinal();
+
+        byte[] actual = new byte[SIGNATURE_BYTES];
+        System.arraycopy(bytes, TOKEN_BYTES, actual, 0, SIGNATURE_BYTES);
+        byte[] truncated = new byte[SIGNATURE_BYTES];
+        System.arraycopy(expected, 0, truncated, 0, SIGNATURE_BYTES);
+
+        if (!MessageDigest.isEqual(truncated, actual)) {
+            throw new QueueAdmissionException("Invalid queue token");
+        }
+        return ByteBuffer.wrap(bytes, 0, TOKEN_BYTES);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+
+    private static final class EventQueue {
+        // This node's share of the event's admissions per second
+        private final double rate;
+        // Admissions after which an admitted token expires
+        private final long window;
+        // Random per queue instance, so a reopened queue never honours old tokens
+        private final long generation = new SecureRandom().nextLong();
+        private final AtomicLong issued = new AtomicLong();
+        private final AtomicLong admitted = new AtomicLong();
+        private final Set<Long> used = ConcurrentHashMap.newKeySet();
+        private volatile long lastJoin = System.currentTimeMillis();
+        // Fraction of a buyer carried to the next tick; only the scheduler touches it
+        private double credit;
+
+        EventQueue(double rate, long window) {
+            this.rate = rate;
+            this.window = window;
+        }
+    }
+}
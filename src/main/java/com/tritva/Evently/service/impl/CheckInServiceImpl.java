@@ -0,0 +1,229 @@
+package com.tritva.Evently.service.impl;
+
+import com.tritva.Evently.model.dto.CheckInResultDto;
+import com.tritva.Evently.model.entity.Event;
+import com.tritva.Evently.repository.EventRepository;
+import com.tritva.Evently.repository.TicketRepository;
+import com.tritva.Evently.service.CheckInService;
+import com.tritva.Evently.util.BloomFilter;
+import com.tritva.Evently.util.TicketPayloadSigner;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Gate check-in. The database decides every admission with a conditional
+ * update, so a ticket is admitted once however many gates or nodes scan it.
+ * The per-node index only turns away unknown codes and tickets this node
+ * has already seen admitted, without a round trip.
+ *
+ * <p>Only admins and the event's own organiser may open, close or scan at
+ * its doors. The index keeps the organiser's email, so scans are authorised
+ * in memory while the doors are open.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CheckInServiceImpl implements CheckInService {
+
+    private static final double BLOOM_FALSE_POSITIVE_RATE = 0.001;
+
+    private final TicketRepository ticketRepository;
+    private final EventRepository eventRepository;
+    private final TicketPayloadSigner ticketPayloadSigner;
+
+    // Gate indexes for events whose doors are open, by event ID
+    private final Map<UUID, EventIndex> indexes = new ConcurrentHashMap<>();
+
+    @Override
+    public int openDoors(UUID eventId, UserDetails requester) {
+        Event event = eventRepository.findById(eventId)
+                .orElseThrow(() -> new EntityNotFoundException("Event not found with ID: " + eventId));
+        String organiserEmail = organiserEmail(eventId);
+        authorise(requester, organiserEmail);
+
+        // Safe to reload while scanning: admissions are decided in the database, not by the index
+        List<TicketRepository.CheckInView> rows = ticketRepository.findCheckInViewsByEventId(eventId);
+        EventIndex index = new EventIndex(rows, organiserEmail);
+        indexes.put(eventId, index);
+
+        log.info("Doors open for event {}: {} tickets indexed", event.getName(), rows.size());
+        return rows.size();
+    }
+
+    @Override
+    public void closeDoors(UUID eventId, UserDetails requester) {
+        EventIndex index = indexes.get(eventId);
+        authorise(requester, index != null ? index.organiserEmail : organiserEmail(eventId));
+        indexes.remove(eventId);
+        log.info("Doors closed for event {}", eventId);
+    }
+
+    @Override
+    public CheckInResultDto checkIn(UUID eventId, String code, UserDetails requester) {
+        EventIndex index = indexes.get(eventId);
+        authorise(requester, index != null ? index.organiserEmail : organiserEmail(eventId));
+
+        String ticketCode;
+        String content = code.trim();
+        boolean signedPayload = ticketPayloadSigner.isSignedPayload(content);
+        if (signedPayload) {
+            // Forged, foreign and expired tickets are turned away before any lookup
+            TicketPayloadSigner.SignedTicket signed = ticketPayloadSigner.verify(content);
+            if (signed == null) {
+                return reject("Ticket signature is not valid");
+            }
+            if (!signed.eventId().equals(eventId)) {
+                return reject("Ticket not valid for this event");
+            }
+            if (signed.expiresAt().isBefore(Instant.now())) {
+                return reject("Ticket has expired");
+            }
+            ticketCode = signed.verificationCode();
+        } else {
+            ticketCode = extractCode(content);
+        }
+
+        // Doors not opened on this node, or a genuine ticket whose code was reissued after the index
+        // was loaded: fall back to an atomic update in the database
+        if (index == null || (signedPayload && !index.slotsByCode.containsKey(ticketCode))) {
+            boolean admitted = ticketRepository.checkInByCode(eventId, ticketCode) == 1;
+            return admitted
+                    ? CheckInResultDto.builder().admitted(true).message("Ticket checked in").build()
+                    : reject("Ticket not valid for this event or already checked in");
+        }
+
+        if (!index.bloom.mightContain(ticketCode)) {
+            return reject("Ticket not valid for this event");
+        }
+
+        Integer slot = index.slotsByCode.get(ticketCode);
+        if (slot == null) {
+            return reject("Ticket not valid for this event");
+        }
+
+        // Seen admitted already, on this node or when the index was loaded
+        if (index.isCheckedIn(slot)) {
+            return alreadyCheckedIn(index, slot);
+        }
+
+        // Only the first update wins, whichever gate or node sent it; a reissued code no longer matches
+        if (ticketRepository.checkInById(index.ticketIds[slot], ticketCode) == 0) {
+            return CheckInResultDto.builder()
+                    .admitted(false)
+                    .ticketId(index.ticketIds[slot])
+                    .ticketNumber(index.ticketNumbers[slot])
+                    .message("Ticket already checked in or its code has been reissued")
+                    .build();
+        }
+        index.markCheckedIn(slot);
+        return CheckInResultDto.builder()
+                .admitted(true)
+                .ticketId(index.ticketIds[slot])
+                .ticketNumber(index.ticketNumbers[slot])
+                .message("Ticket checked in")
+                .build();
+    }
+
+    private String organiserEmail(UUID eventId) {
+        return eventRepository.findOrganiserEmailById(eventId)
+                .orElseThrow(() -> new EntityNotFoundException("Event not found with ID: " + eventId));
+    }
+
+    // Same rule as QR regeneration: admins, or the organiser who owns the event
+    private static void authorise(UserDetails requester, String organiserEmail) {
+        boolean admin = requester.getAuthorities().stream()
+                .anyMatch(authority -> "ROLE_ADMIN".equals(authority.getAuthority()));
+        if (!admin && !requester.getUsername().equals(organiserEmail)) {
+            throw new AccessDeniedException("Only the event's organiser can run check-in for it");
+        }
+    }
+
+    private CheckInResultDto alreadyCheckedIn(EventIndex index, int slot) {
+        return CheckInResultDto.builder()
+                .admitted(false)
+                .ticketId(index.ticketIds[slot])
+                .ticketNumber(index.ticketNumbers[slot])
+                .message("Ticket already checked in")
+                .build();
+    }
+
+    private CheckInResultDto reject(String message) {
+        return CheckInResultDto.builder().admitted(false).message(message).build();
+    }
+
+    // Tickets issued before signed payloads carry TICKET:<number>:CODE:<code>
+    private String extractCode(String code) {
+        String trimmed = code.trim();
+        int marker = trimmed.indexOf(":CODE:");
+        if (trimmed.startsWith("TICKET:") && marker > 0) {
+            return trimmed.substring(marker + ":CODE:".length());
+        }
+        return trimmed;
+    }
+
+    /**
+     * One event's tickets laid out by slot. Codes and numbers map to a slot;
+     * one bit per slot remembers tickets known to be checked in.
+     */
+    private static final class EventIndex {
+        private final UUID[] ticketIds;
+        private final String[] ticketNumbers;
+        private final Map<String, Integer> slotsByCode;
+        private final BloomFilter bloom;
+        private final AtomicLongArray checkedIn;
+        private final String organiserEmail;
+
+        EventIndex(List<TicketRepository.CheckInView> rows, String organiserEmail) {
+            this.organiserEmail = organiserEmail;
+            int size = rows.size();
+            ticketIds = new UUID[size];
+            ticketNumbers = new String[size];
+            slotsByCode = new HashMap<>(size * 4);
+            bloom = new BloomFilter(size * 2, BLOOM_FALSE_POSITIVE_RATE);
+            checkedIn = new AtomicLongArray((size + 63) >>> 6);
+
+            for (int slot = 0; slot < size; slot++) {
+                TicketRepository.CheckInView row = rows.get(slot);
+                ticketIds[slot] = row.getId();
+                ticketNumbers[slot] = row.getTicketNumber();
+                index(row.getTicketNumber(), slot);
+                index(row.getVerificationCode(), slot);
+                if (Boolean.TRUE.equals(row.getCheckedIn())) {
+                    markCheckedIn(slot);
+                }
+            }
+        }
+
+        private void index(String code, int slot) {
+            if (code != null) {
+                slotsByCode.put(code, slot);
+                bloom.add(code);
+            }
+        }
+
+        boolean isCheckedIn(int slot) {
+            return (checkedIn.get(slot >>> 6) & (1L << slot)) != 0;
+        }
+
+        void markCheckedIn(int slot) {
+            int word = slot >>> 6;
+            long mask = 1L << slot;
+            long current;
+            do {
+                current = checkedIn.get(word);
+            } while ((current & mask) == 0 && !checkedIn.compareAndSet(word, current, current | mask));
+        }
+    }
+}
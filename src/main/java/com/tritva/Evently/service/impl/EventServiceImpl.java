@@ -10,6 +10,7 @@ import com.tritva.Evently.repository.CategoryRepository;
 import com.tritva.Evently.repository.EventRepository;
 import com.tritva.Evently.repository.UserRepository;
 import com.tritva.Evently.service.EventService;
+import com.tritva.Evently.service.WaitingRoomService;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -29,6 +30,7 @@ public class EventServiceImpl implements EventService {
     private final CategoryRepository categoryRepository;
     private final UserRepository userRepository;
     private final EventMapper eventMapper;
+    private final WaitingRoomService waitingRoomService;
 
     @Override
     @Transactional
@@ -107,9 +109,11 @@ public class EventServiceImpl implements EventService {
             throw new IllegalArgumentException("End date must be after start date");
         }
 
-        // Check if new capacity is valid (cannot be less than tickets sold)
-        int ticketsSold = event.getTickets().size();
-        if (dto.getCapacity() < ticketsSold) {
+        // Check if new capacity is valid (cannot be less than tickets sold).
+        // The conditional update guards against sales that land after the read.
+        if (dto.getCapacity() != event.getCapacity()
+                && eventRepository.updateCapacity(id, dto.getCapacity()) == 0) {
+            int ticketsSold = eventRepository.findTicketsSoldById(id);
             throw new IllegalArgumentException(
                     String.format("Cannot reduce capacity to %d. %d tickets already sold.",
                             dto.getCapacity(), ticketsSold)
@@ -128,9 +132,12 @@ public class EventServiceImpl implements EventService {
         event.setCategory(category);
         event.setOrganiser(organiser);
         event.setCapacity(dto.getCapacity());
+        event.setHotSale(dto.isHotSale());
+        event.setAdmissionRatePerSecond(dto.getAdmissionRatePerSecond());
 
         // Save updated event
         Event updatedEvent = eventRepository.save(event);
+        waitingRoomService.forget(id);
 
         log.info("Event updated successfully. New capacity: {}, Available: {}",
                 updatedEvent.getCapacity(), updatedEvent.getAvailableTickets());
@@ -147,10 +154,10 @@ public class EventServiceImpl implements EventService {
                 .orElseThrow(() -> new EntityNotFoundException("Event not found"));
 
         // Check if tickets have been sold
-        if (!event.getTickets().isEmpty()) {
+        if (event.getTicketsSold() > 0) {
             throw new IllegalStateException(
                     String.format("Cannot delete event. %d tickets have been sold.",
-                            event.getTickets().size())
+                            event.getTicketsSold())
             );
         }
 
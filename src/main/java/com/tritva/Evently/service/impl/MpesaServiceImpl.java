@@ -2,7 +2,12 @@ package com.tritva.Evently.service.impl;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tritva.Evently.client.DarajaClient;
+import com.tritva.Evently.client.StkPushDispatcher;
 import com.tritva.Evently.config.MpesaConfig;
+import com.tritva.Evently.event.PaymentSettledEvent;
+import com.tritva.Evently.exception.PaymentsUnavailableException;
+import com.tritva.Evently.mapper.PaymentMapper;
 import com.tritva.Evently.model.Status;
 import com.tritva.Evently.model.dto.MpesaPaymentRequestDto;
 import com.tritva.Evently.model.dto.MpesaPaymentResponseDto;
@@ -13,66 +18,76 @@ import com.tritva.Evently.repository.EventRepository;
 import com.tritva.Evently.repository.PaymentRepository;
 import com.tritva.Evently.repository.UserRepository;
 import com.tritva.Evently.service.MpesaService;
+import com.tritva.Evently.service.MpesaTokenCache;
 import com.tritva.Evently.service.PaymentNotificationService;
+import com.tritva.Evently.service.PaymentStatusCache;
+import com.tritva.Evently.service.SeatHoldService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Base64;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class MpesaServiceImpl implements MpesaService {
 
+    // Crockford base32, as ticket codes use
+    private static final char[] REFERENCE_ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final SecureRandom RANDOM = new SecureRandom();
+
     private final MpesaConfig mpesaConfig;
     private final PaymentRepository paymentRepository;
     private final EventRepository eventRepository;
     private final UserRepository userRepository;
     private final PaymentNotificationService notificationService;
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final SeatHoldService seatHoldService;
+    private final MpesaTokenCache tokenCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final DarajaClient darajaClient;
+    private final StkPushDispatcher stkPushDispatcher;
+    private final PaymentStatusCache statusCache;
+    private final PaymentMapper paymentMapper;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
-    @Override
-    public String getAccessToken() {
-        try {
-            String auth = mpesaConfig.getConsumerKey() + ":" + mpesaConfig.getConsumerSecret();
-            String encodedAuth = Base64.getEncoder().encodeToString(auth.getBytes(StandardCharsets.UTF_8));
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("Authorization", "Basic " + encodedAuth);
-            headers.setContentType(MediaType.APPLICATION_JSON);
+    // How long a push whose response was lost can still be claimed by its callback
+    @Value("${app.payments.unconfirmed-push-seconds:600}")
+    private long unconfirmedPushSeconds;
 
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-
-            String url = mpesaConfig.getOauthUrl() + "/oauth/v1/generate?grant_type=client_credentials";
-
-            ResponseEntity<String> response = restTemplate.exchange(
-                    url,
-                    HttpMethod.GET,
-                    entity,
-                    String.class
-            );
-
-            JsonNode jsonNode = objectMapper.readTree(response.getBody());
-            String accessToken = jsonNode.get("access_token").asText();
+    // A null response means the push timed out and may or may not have reached the buyer
+    private record StkPush(String shortCode, JsonNode response) {
+    }
 
-            log.info("M-Pesa access token obtained successfully");
-            return accessToken;
+    // Token for the first configured shortcode
+    @Override
+    public String getAccessToken() {
+        return tokenCache.getToken(mpesaConfig.resolvedShortCodes().get(0));
+    }
 
-        } catch (Exception e) {
-            log.error("Failed to get M-Pesa access token", e);
-            throw new RuntimeException("Failed to authenticate with M-Pesa: " + e.getMessage());
-        }
+    @Override
+    public void ensureAvailable() {
+        darajaClient.ensureAvailable();
     }
 
+    // Deliberately not @Transactional: the lookups and the Payment insert each run in their
+    // own repository transaction, so no connection is held while Daraja is called
     @Override
     public MpesaPaymentResponseDto initiateSTKPush(MpesaPaymentRequestDto request) {
         try {
@@ -87,73 +102,49 @@ public class MpesaServiceImpl implements MpesaService {
                         .orElseThrow(() -> new RuntimeException("User not found"));
             }
 
+            // Priced here from the event; the client never says what it pays
+            int quantity = request.getQuantity() != null ? request.getQuantity() : 1;
+            BigDecimal amount = BigDecimal.valueOf(event.getPrice())
+                    .multiply(BigDecimal.valueOf(quantity))
+                    .setScale(0, RoundingMode.CEILING);
+            if (amount.signum() <= 0) {
+                throw new RuntimeException("This event has no price to pay");
+            }
+
             // Format phone number (remove leading 0 or +, add 254)
             String phone = formatPhoneNumber(request.getPhone());
 
-            // Generate timestamp
-            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-
-            // Generate password
-            String password = generatePassword(timestamp);
-
-            // Get access token
-            String accessToken = getAccessToken();
-
-            // Prepare request body
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("BusinessShortCode", mpesaConfig.getShortCode());
-            requestBody.put("Password", password);
-            requestBody.put("Timestamp", timestamp);
-            requestBody.put("TransactionType", "CustomerPayBillOnline");
-            requestBody.put("Amount", request.getAmount().intValue());
-            requestBody.put("PartyA", phone);
-            requestBody.put("PartyB", mpesaConfig.getShortCode());
-            requestBody.put("PhoneNumber", phone);
-            requestBody.put("CallBackURL", mpesaConfig.getCallbackUrl());
-            requestBody.put("AccountReference", "Ticket-" + event.getName());
-            requestBody.put("TransactionDesc", "Payment for " + event.getName());
-
-            // Set headers
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("Authorization", "Bearer " + accessToken);
-            headers.setContentType(MediaType.APPLICATION_JSON);
-
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
-
-            // Make STK Push request
-            String url = mpesaConfig.getApiUrl() + "/mpesa/stkpush/v1/processrequest";
-
-            ResponseEntity<String> response = restTemplate.exchange(
-                    url,
-                    HttpMethod.POST,
-                    entity,
-                    String.class
-            );
+            // Paced to each shortcode's rate and sent from the least loaded one; bursts wait here
+            String reference = newAccountReference();
+            StkPush push = stkPushDispatcher.dispatch(shortCode -> sendStkPush(shortCode, amount, phone, event, reference));
+            JsonNode jsonResponse = push.response();
 
-            JsonNode jsonResponse = objectMapper.readTree(response.getBody());
+            // The prompt may still reach the buyer, so the intent is kept without a checkout ID;
+            // its callback claims it by the reference on the callback URL, and the seats stay held meanwhile
+            if (jsonResponse == null) {
+                paymentRepository.save(
+                        pendingPayment(request, event, user, amount, phone, push.shortCode(), reference, null, null));
+                log.warn("STK Push via {} timed out; recorded an unconfirmed payment for {}", push.shortCode(), phone);
+
+                return MpesaPaymentResponseDto.builder()
+                        .message("We could not confirm the payment request. If a prompt reaches your phone, " +
+                                "enter your M-Pesa PIN and your tickets will be emailed to you.")
+                        .build();
+            }
 
             String responseCode = jsonResponse.get("ResponseCode").asText();
             String checkoutRequestId = jsonResponse.get("CheckoutRequestID").asText();
             String merchantRequestId = jsonResponse.get("MerchantRequestID").asText();
 
             if ("0".equals(responseCode)) {
-                // Create pending payment record with user
-                Payment.PaymentBuilder paymentBuilder = Payment.builder()
-                        .event(event)
-                        .amount(request.getAmount().doubleValue())
-                        .status(Status.PENDING)
-                        .mpesaCheckoutRequestId(checkoutRequestId)
-                        .phoneNumber(phone);
-
-                // Add user if available
-                if (user != null) {
-                    paymentBuilder.user(user);
-                }
+                Payment payment = paymentRepository.save(
+                        pendingPayment(request, event, user, amount, phone, push.shortCode(), reference,
+                                checkoutRequestId, merchantRequestId));
 
-                Payment payment = paymentBuilder.build();
-                paymentRepository.save(payment);
+                // First status polls are answered from memory
+                statusCache.put(checkoutRequestId, paymentMapper.toDto(payment));
 
-                log.info("STK Push initiated successfully. CheckoutRequestID: {}", checkoutRequestId);
+                log.info("STK Push initiated successfully via {}. CheckoutRequestID: {}", push.shortCode(), checkoutRequestId);
 
                 return MpesaPaymentResponseDto.builder()
                         .checkoutRequestId(checkoutRequestId)
@@ -163,6 +154,10 @@ public class MpesaServiceImpl implements MpesaService {
                 throw new RuntimeException("Failed to initiate payment: " + jsonResponse.get("ResponseDescription").asText());
             }
 
+        } catch (PaymentsUnavailableException e) {
+            // Circuit open or bulkhead full; surfaced as 503 rather than a failed payment
+            log.warn("STK Push not attempted: {}", e.getMessage());
+            throw e;
         } catch (Exception e) {
             log.error("Error initiating STK Push", e);
             throw new RuntimeException("Failed to initiate payment: " + e.getMessage());
@@ -170,62 +165,247 @@ public class MpesaServiceImpl implements MpesaService {
     }
 
     @Override
-    public void processCallback(String callbackData) {
+    public void processCallback(String callbackData, String reference) {
+        JsonNode callback;
         try {
-            JsonNode callback = objectMapper.readTree(callbackData);
-            JsonNode body = callback.get("Body").get("stkCallback");
-
-            String checkoutRequestId = body.get("CheckoutRequestID").asText();
-            int resultCode = body.get("ResultCode").asInt();
-            String resultDesc = body.get("ResultDesc").asText();
-
-            Payment payment = paymentRepository.findByMpesaCheckoutRequestId(checkoutRequestId)
-                    .orElseThrow(() -> new RuntimeException("Payment not found for CheckoutRequestID: " + checkoutRequestId));
-
-            if (resultCode == 0) {
-                // Payment successful
-                JsonNode callbackMetadata = body.get("CallbackMetadata").get("Item");
-                String mpesaReceiptNumber = null;
-
-                for (JsonNode item : callbackMetadata) {
-                    if ("MpesaReceiptNumber".equals(item.get("Name").asText())) {
-                        mpesaReceiptNumber = item.get("Value").asText();
-                        break;
-                    }
+            callback = objectMapper.readTree(callbackData);
+        } catch (Exception e) {
+            throw new RuntimeException("Malformed M-Pesa callback: " + e.getMessage());
+        }
+        JsonNode body = callback.get("Body").get("stkCallback");
+
+        String checkoutRequestId = body.get("CheckoutRequestID").asText();
+        int resultCode = body.get("ResultCode").asInt();
+        String resultDesc = body.get("ResultDesc").asText();
+        String merchantRequestId = body.path("MerchantRequestID").asText(null);
+
+        // Thrown rather than logged, so the inbox retries callbacks that arrive before their payment is saved
+        Payment payment = paymentRepository.findByMpesaCheckoutRequestId(checkoutRequestId)
+                .or(() -> claimUnconfirmedPush(body, checkoutRequestId, merchantRequestId, reference))
+                .orElseThrow(() -> new RuntimeException("Payment not found for CheckoutRequestID: " + checkoutRequestId));
+
+        // Daraja hands out both IDs together, so a mismatch is not this payment's callback
+        if (payment.getMerchantRequestId() != null && !payment.getMerchantRequestId().equals(merchantRequestId)) {
+            log.error("Callback {} carries MerchantRequestID {} but payment {} was pushed as {}; ignoring it",
+                    checkoutRequestId, merchantRequestId, payment.getId(), payment.getMerchantRequestId());
+            return;
+        }
+
+        // Redelivered callback for a payment that is already settled
+        if (payment.getStatus() != Status.PENDING) {
+            log.info("Payment {} already {}, ignoring callback", checkoutRequestId, payment.getStatus());
+            return;
+        }
+
+        if (resultCode == 0) {
+            // Payment successful
+            JsonNode callbackMetadata = body.get("CallbackMetadata").get("Item");
+            String mpesaReceiptNumber = null;
+
+            for (JsonNode item : callbackMetadata) {
+                if ("MpesaReceiptNumber".equals(item.get("Name").asText())) {
+                    mpesaReceiptNumber = item.get("Value").asText();
+                    break;
                 }
+            }
 
-                payment.setStatus(Status.COMPLETED);
-                payment.setTransactionId(mpesaReceiptNumber);
-                payment.setMpesaResultDesc(resultDesc);
+            payment.setStatus(Status.COMPLETED);
+            payment.setTransactionId(mpesaReceiptNumber);
+            payment.setMpesaResultDesc(resultDesc);
 
-                log.info("Payment completed successfully. TransactionID: {}", mpesaReceiptNumber);
+            log.info("Payment completed successfully. TransactionID: {}", mpesaReceiptNumber);
 
-                // Notify via SSE
-                notificationService.notifyPaymentStatus(
-                        checkoutRequestId,
-                        "COMPLETED",
-                        "Payment successful! Receipt: " + mpesaReceiptNumber
-                );
-            } else {
-                // Payment failed
-                payment.setStatus(Status.FAILED);
-                payment.setMpesaResultDesc(resultDesc);
-
-                log.warn("Payment failed. ResultCode: {}, Description: {}", resultCode, resultDesc);
-
-                // Notify via SSE
-                notificationService.notifyPaymentStatus(
-                        checkoutRequestId,
-                        "FAILED",
-                        resultDesc
-                );
+            // Notify via SSE
+            notificationService.notifyAfterCommit(
+                    checkoutRequestId,
+                    "COMPLETED",
+                    "Payment successful! Receipt: " + mpesaReceiptNumber
+            );
+        } else {
+            // Payment failed
+            payment.setStatus(Status.FAILED);
+            payment.setMpesaResultDesc(resultDesc);
+
+            log.warn("Payment failed. ResultCode: {}, Description: {}", resultCode, resultDesc);
+
+            // Free the seat that was held for this payment
+            seatHoldService.releaseHoldForCheckout(checkoutRequestId);
+
+            // Notify via SSE
+            notificationService.notifyAfterCommit(
+                    checkoutRequestId,
+                    "FAILED",
+                    resultDesc
+            );
+        }
+
+        paymentRepository.save(payment);
+        statusCache.putAfterCommit(checkoutRequestId, paymentMapper.toDto(payment));
+
+        // Ticket issuance listens for this instead of polling the payment
+        eventPublisher.publishEvent(new PaymentSettledEvent(payment.getId(), checkoutRequestId, payment.getStatus()));
+    }
+
+    // Matches a callback to a push whose response timed out, by the reference on the callback URL
+    private Optional<Payment> claimUnconfirmedPush(JsonNode body, String checkoutRequestId,
+                                                   String merchantRequestId, String reference) {
+        boolean paid = body.get("ResultCode").asInt() == 0;
+        Optional<Payment> match = reference != null
+                ? paymentRepository.findByAccountReferenceAndMpesaCheckoutRequestIdIsNull(reference)
+                : paid ? matchByPhoneAndAmount(body) : Optional.empty();
+        if (match.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Payment payment = match.get();
+        payment.setMpesaCheckoutRequestId(checkoutRequestId);
+        payment.setMerchantRequestId(merchantRequestId);
+
+        // Expired by reconciliation before M-Pesa answered, yet the buyer paid: take the seats again
+        if (paid && payment.getStatus() == Status.FAILED) {
+            payment.setStatus(Status.PENDING);
+            payment.setSeatHoldId(holdSeatsAgain(payment));
+        }
+
+        if (payment.getSeatHoldId() != null) {
+            seatHoldService.attachCheckout(payment.getSeatHoldId(), checkoutRequestId);
+        }
+        log.info("Matched callback {} to unconfirmed payment {}", checkoutRequestId, payment.getId());
+        return Optional.of(payment);
+    }
+
+    private UUID holdSeatsAgain(Payment payment) {
+        int quantity = payment.getTicketQuantity() != null ? payment.getTicketQuantity() : 1;
+        try {
+            return seatHoldService.placeHold(payment.getEvent().getId(), quantity).getId();
+        } catch (RuntimeException e) {
+            // Ticket issuance will keep failing for it; somebody has to refund the buyer
+            log.error("Payment {} arrived after its unconfirmed push expired and {} seat(s) could not be held " +
+                    "again; the buyer needs a refund", payment.getId(), quantity, e);
+            return null;
+        }
+    }
+
+    // Pushes sent before payments carried a reference: phone and amount, and only if that is unambiguous.
+    // Failed callbacks carry neither, and those intents are expired by reconciliation instead
+    private Optional<Payment> matchByPhoneAndAmount(JsonNode body) {
+        JsonNode items = body.path("CallbackMetadata").path("Item");
+        if (!items.isArray()) {
+            return Optional.empty();
+        }
+
+        String phone = null;
+        Double amount = null;
+        for (JsonNode item : items) {
+            switch (item.path("Name").asText()) {
+                case "PhoneNumber" -> phone = item.path("Value").asText();
+                case "Amount" -> amount = item.path("Value").asDouble();
+                default -> {
+                }
             }
+        }
+        if (phone == null || amount == null) {
+            return Optional.empty();
+        }
 
-            paymentRepository.save(payment);
+        List<Payment> candidates = paymentRepository.findUnconfirmedPushes(
+                phone, amount, LocalDateTime.now().minusSeconds(unconfirmedPushSeconds));
+        if (candidates.size() > 1) {
+            log.error("Callback matches {} unconfirmed payments by phone and amount; not guessing", candidates.size());
+            return Optional.empty();
+        }
+        return candidates.stream().findFirst();
+    }
 
-        } catch (Exception e) {
-            log.error("Error processing M-Pesa callback", e);
+    @Override
+    public JsonNode queryStkStatus(String shortCode, String checkoutRequestId) {
+        // Asked of the shortcode the push went out on
+        MpesaConfig.ShortCode credentials = mpesaConfig.resolveShortCode(shortCode)
+                .orElseThrow(() -> new IllegalStateException("Shortcode " + shortCode + " is no longer configured"));
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
+
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("BusinessShortCode", credentials.getShortCode());
+        requestBody.put("Password", generatePassword(credentials, timestamp));
+        requestBody.put("Timestamp", timestamp);
+        requestBody.put("CheckoutRequestID", checkoutRequestId);
+
+        String accessToken = tokenCache.getToken(credentials);
+        try {
+            return darajaClient.stkQuery(accessToken, requestBody);
+        } catch (HttpClientErrorException.Unauthorized e) {
+            tokenCache.invalidate(credentials, accessToken);
+            throw e;
+        }
+    }
+
+    private StkPush sendStkPush(MpesaConfig.ShortCode shortCode, BigDecimal amount, String phone, Event event,
+                                String reference) {
+        // Timestamp and token are taken after any rate limit wait
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
+        String accessToken = tokenCache.getToken(shortCode);
+
+        // Prepare request body
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("BusinessShortCode", shortCode.getShortCode());
+        requestBody.put("Password", generatePassword(shortCode, timestamp));
+        requestBody.put("Timestamp", timestamp);
+        requestBody.put("TransactionType", "CustomerPayBillOnline");
+        requestBody.put("Amount", amount.intValueExact());
+        requestBody.put("PartyA", phone);
+        requestBody.put("PartyB", shortCode.getShortCode());
+        requestBody.put("PhoneNumber", phone);
+        requestBody.put("CallBackURL", UriComponentsBuilder.fromHttpUrl(mpesaConfig.getCallbackUrl())
+                .queryParam("ref", reference).toUriString());
+        requestBody.put("AccountReference", reference);
+        requestBody.put("TransactionDesc", "Payment for " + event.getName());
+
+        try {
+            return new StkPush(shortCode.getShortCode(), darajaClient.stkPush(accessToken, requestBody));
+        } catch (ResourceAccessException e) {
+            // Daraja may have accepted the push before the response was lost
+            log.warn("STK Push via {} got no response: {}", shortCode.getShortCode(), e.getMessage());
+            return new StkPush(shortCode.getShortCode(), null);
+        } catch (HttpClientErrorException.Unauthorized e) {
+            // Token revoked before its expiry; make the next purchase fetch a fresh one
+            tokenCache.invalidate(shortCode, accessToken);
+            throw e;
+        } catch (HttpClientErrorException.TooManyRequests e) {
+            // Daraja's own limit still tripped (another app on the shortcode); not the buyer's fault
+            throw new PaymentsUnavailableException("Payments are busy right now. Please try again in a moment.", 1);
+        }
+    }
+
+    // Event and user are detached by now, which is fine since only their IDs are written
+    private Payment pendingPayment(MpesaPaymentRequestDto request, Event event, User user, BigDecimal amount,
+                                   String phone, String shortCode, String reference,
+                                   String checkoutRequestId, String merchantRequestId) {
+        return Payment.builder()
+                .event(event)
+                .user(user)
+                .amount(amount.doubleValue())
+                .status(Status.PENDING)
+                .mpesaCheckoutRequestId(checkoutRequestId)
+                .merchantRequestId(merchantRequestId)
+                .accountReference(reference)
+                .shortCode(shortCode)
+                .phoneNumber(phone)
+                .buyerEmail(request.getEmail())
+                .ticketQuantity(request.getQuantity())
+                .unitPrice(event.getPrice())
+                .seatHoldId(request.getHoldId())
+                .build();
+    }
+
+    // Daraja allows 12 characters: "EV" and 50 random bits in Crockford base32
+    private static String newAccountReference() {
+        char[] reference = {'E', 'V', 0, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+        long bits = RANDOM.nextLong();
+        for (int i = 2; i < reference.length; i++) {
+            reference[i] = REFERENCE_ALPHABET[(int) (bits & 31)];
+            bits >>>= 5;
         }
+        return new String(reference);
     }
 
     private String formatPhoneNumber(String phone) {
@@ -245,8 +425,8 @@ public class MpesaServiceImpl implements MpesaService {
         return phone;
     }
 
-    private String generatePassword(String timestamp) {
-        String str = mpesaConfig.getShortCode() + mpesaConfig.getPasskey() + timestamp;
+    private String generatePassword(MpesaConfig.ShortCode shortCode, String timestamp) {
+        String str = shortCode.getShortCode() + shortCode.getPasskey() + timestamp;
         return Base64.getEncoder().encodeToString(str.getBytes(StandardCharsets.UTF_8));
     }
 }
\ No newline at end of file
@@ -9,6 +9,7 @@ import com.tritva.Evently.model.entity.Payment;
 import com.tritva.Evently.repository.PaymentRepository;
 import com.tritva.Evently.service.MpesaService;
 import com.tritva.Evently.service.PaymentService;
+import com.tritva.Evently.service.PaymentStatusCache;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -25,16 +26,16 @@ public class PaymentServiceImpl implements PaymentService {
     private final MpesaService mpesaService;
     private final PaymentRepository paymentRepository;
     private final PaymentMapper paymentMapper;
+    private final PaymentStatusCache statusCache;
 
+    // No transaction here; MpesaService keeps the Daraja call outside any unit of work
     @Override
-    @Transactional
     public MpesaPaymentResponseDto initiatePayment(PaymentRequestDto request, UUID userId) {
         log.info("Initiating payment for event {} by user {}", request.getEventId(), userId);
 
         // Create M-Pesa payment request with userId
         MpesaPaymentRequestDto mpesaRequest = MpesaPaymentRequestDto.builder()
                 .phone(request.getPhoneNumber())
-                .amount(request.getAmount())
                 .eventId(request.getEventId())
                 .userId(userId)  // Pass the userId
                 .build();
@@ -44,6 +45,7 @@ public class PaymentServiceImpl implements PaymentService {
     }
 
     @Override
+    @Transactional(readOnly = true)
     public PaymentDto getPaymentById(UUID paymentId) {
         Payment payment = paymentRepository.findById(paymentId)
                 .orElseThrow(() -> new EntityNotFoundException("Payment not found with ID: " + paymentId));
@@ -51,11 +53,19 @@ public class PaymentServiceImpl implements PaymentService {
         return paymentMapper.toDto(payment);
     }
 
+    // Polled every second or two; not @Transactional so cache hits never take a connection
     @Override
     public PaymentDto checkPaymentStatus(String checkoutRequestId) {
+        PaymentDto cached = statusCache.get(checkoutRequestId);
+        if (cached != null) {
+            return cached;
+        }
+
         Payment payment = paymentRepository.findByMpesaCheckoutRequestId(checkoutRequestId)
                 .orElseThrow(() -> new EntityNotFoundException("Payment not found for CheckoutRequestID: " + checkoutRequestId));
 
-        return paymentMapper.toDto(payment);
+        PaymentDto dto = paymentMapper.toDto(payment);
+        statusCache.putIfAbsent(checkoutRequestId, dto);
+        return dto;
     }
 }
\ No newline at end of file
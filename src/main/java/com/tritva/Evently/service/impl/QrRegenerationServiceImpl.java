@@ -0,0 +1,290 @@
+package com.tritva.Evently.service.impl;
+
+import com.tritva.Evently.model.dto.QrRegenerationStatusDto;
+import com.tritva.Evently.model.entity.Event;
+import com.tritva.Evently.repository.EventRepository;
+import com.tritva.Evently.repository.TicketRepository;
+import com.tritva.Evently.service.CheckInService;
+import com.tritva.Evently.service.QrCodeService;
+import com.tritva.Evently.service.QrRegenerationService;
+import com.tritva.Evently.util.TicketCodeGenerator;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class QrRegenerationServiceImpl implements QrRegenerationService {
+
+    private static final String PAGE_QUERY = """
+            SELECT id, ticket_number, verification_code FROM tickets
+            WHERE event_id = ? AND id > ?
+            ORDER BY id
+            LIMIT ?""";
+
+    // New codes void the tickets already sent, so rotated tickets go back to the
+    // fulfilment sweep to be emailed again; older tickets fall back to the holder's email
+    private static final String ROTATE_UPDATE = """
+            UPDATE tickets SET verification_code = ?, qr_code_key = ?,
+                fulfilment_status = 'RENDERED', fulfilment_attempts = 0, fulfilment_due_at = ?,
+                delivery_email = COALESCE(delivery_email, (SELECT u.email FROM users u WHERE u.id = tickets.user_id))
+            WHERE id = ?""";
+
+    private final EventRepository eventRepository;
+    private final TicketRepository ticketRepository;
+    private final QrCodeService qrCodeService;
+    private final TicketCodeGenerator ticketCodeGenerator;
+    private final CheckInService checkInService;
+    private final JdbcTemplate jdbcTemplate;
+
+    // Tickets read, rendered and written per round trip
+    @Value("${app.qr.regeneration.page-size:1000}")
+    private int pageSize;
+
+    // Render threads; 0 means one per CPU
+    @Value("${app.qr.regeneration.parallelism:0}")
+    private int parallelism;
+
+    // Keeps a regeneration from starving ticket sales of CPU and database time
+    @Value("${app.qr.regeneration.max-tickets-per-second:5000}")
+    private int maxTicketsPerSecond;
+
+    // At most this many events are regenerated at once; the rest wait as QUEUED
+    @Value("${app.qr.regeneration.concurrent-jobs:2}")
+    private int concurrentJobs;
+
+    // Latest job per event
+    private final Map<UUID, Job> jobs = new ConcurrentHashMap<>();
+
+    private ForkJoinPool renderPool;
+    private ExecutorService jobRunner;
+
+    @PostConstruct
+    void init() {
+        renderPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+
+        AtomicInteger counter = new AtomicInteger();
+        jobRunner = Executors.newFixedThreadPool(concurrentJobs, runnable -> {
+            Thread thread = new Thread(runnable, "qr-regeneration-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void stop() {
+        jobRunner.shutdownNow();
+        renderPool.shutdownNow();
+    }
+
+    @Override
+    public QrRegenerationStatusDto start(UUID eventId, boolean rotateCodes, UserDetails requester) {
+        Event event = eventRepository.findById(eventId)
+                .orElseThrow(() -> new EntityNotFoundException("Event not found with ID: " + eventId));
+
+        boolean admin = requester.getAuthorities().stream()
+                .anyMatch(authority -> "ROLE_ADMIN".equals(authority.getAuthority()));
+        if (!admin && !eventRepository.existsByIdAndOrganiserEmail(eventId, requester.getUsername())) {
+            throw new AccessDeniedException("Only the event's organiser can regenerate its QR codes");
+        }
+
+        Job job = new Job(event, rotateCodes, ticketRepository.countByEventId(eventId), requester);
+        Job current = jobs.compute(eventId, (id, existing) -> existing != null && existing.isActive() ? existing : job);
+        if (current != job) {
+            throw new RuntimeException("QR codes for this event are already being regenerated");
+        }
+
+        jobRunner.execute(() -> run(job));
+        log.info("Queued QR regeneration for event {} ({} tickets, rotateCodes={})",
+                event.getName(), job.total, rotateCodes);
+        return job.toDto();
+    }
+
+    @Override
+    public QrRegenerationStatusDto status(UUID eventId) {
+        Job job = jobs.get(eventId);
+        if (job == null) {
+            throw new EntityNotFoundException("No QR regeneration found for event: " + eventId);
+        }
+        return job.toDto();
+    }
+
+    private void run(Job job) {
+        job.begin();
+        try {
+            // Old codes must stop working at the gate. Other nodes keep their index, but admissions
+            // there are checked against the code in the database, so old codes fail everywhere
+            if (job.rotateCodes) {
+                checkInService.closeDoors(job.eventId, job.requester);
+            }
+
+            // UUIDv7 IDs sort by creation time, so the keyset walks the event oldest first
+            UUID cursor = new UUID(0L, 0L);
+            while (true) {
+                List<TicketRow> page = jdbcTemplate.query(PAGE_QUERY,
+                        (rs, rowNum) -> new TicketRow(
+                                rs.getObject("id", UUID.class),
+                                rs.getString("ticket_number"),
+                                rs.getString("verification_code"),
+                                null),
+                        job.eventId, cursor, pageSize);
+                if (page.isEmpty()) {
+                    break;
+                }
+
+                // Parallel streams run on the pool that invokes them, keeping common-pool users unaffected
+                List<TicketRow> rendered = renderPool.submit(() -> page.parallelStream()
+                        .map(row -> render(job, row))
+                        .toList()).get();
+
+                if (job.rotateCodes) {
+                    LocalDateTime redeliverAt = LocalDateTime.now();
+                    jdbcTemplate.batchUpdate(ROTATE_UPDATE, rendered, rendered.size(),
+                            (ps, row) -> {
+                                ps.setString(1, row.verificationCode());
+                                ps.setString(2, row.qrCodeKey());
+                                ps.setObject(3, redeliverAt);
+                                ps.setObject(4, row.id());
+                            });
+                } else {
+                    jdbcTemplate.batchUpdate(
+                            "UPDATE tickets SET qr_code_key = ? WHERE id = ?",
+                            rendered, rendered.size(),
+                            (ps, row) -> {
+                                ps.setString(1, row.qrCodeKey());
+                                ps.setObject(2, row.id());
+                            });
+                }
+                rendered.forEach(row -> qrCodeService.evict(row.id()));
+
+                job.advance(page.size());
+                cursor = page.get(page.size() - 1).id();
+                throttle(job);
+
+                if (page.size() < pageSize) {
+                    break;
+                }
+            }
+
+            job.complete();
+            log.info("Regenerated {} QR code(s) for event {} in {} ms",
+                    job.processed, job.eventId, job.elapsedMillis());
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.fail("Interrupted");
+        } catch (Exception e) {
+            log.error("QR regeneration failed for event {} after {} ticket(s)", job.eventId, job.processed, e);
+            job.fail(e.getMessage());
+        }
+    }
+
+    private TicketRow render(Job job, TicketRow row) {
+        String verificationCode = job.rotateCodes ? ticketCodeGenerator.nextVerificationCode() : row.verificationCode();
+        String key = qrCodeService.storeImage(job.event, row.id(), verificationCode);
+        return new TicketRow(row.id(), row.ticketNumber(), verificationCode, key);
+    }
+
+    // Sleep off any lead over the configured rate
+    private void throttle(Job job) throws InterruptedException {
+        if (maxTicketsPerSecond <= 0) {
+            return;
+        }
+        long earliestMillis = job.processed * 1000L / maxTicketsPerSecond;
+        long aheadMillis = earliestMillis - job.elapsedMillis();
+        if (aheadMillis > 0) {
+            TimeUnit.MILLISECONDS.sleep(aheadMillis);
+        }
+    }
+
+    private record TicketRow(UUID id, String ticketNumber, String verificationCode, String qrCodeKey) {
+    }
+
+    private static final class Job {
+        final Event event;
+        final UUID eventId;
+        final boolean rotateCodes;
+        final long total;
+        // Already authorised for this event; closing its doors is done on their behalf
+        final UserDetails requester;
+
+        volatile String state = "QUEUED";
+        volatile long processed;
+        volatile long startNanos;
+        volatile LocalDateTime startedAt;
+        volatile LocalDateTime finishedAt;
+        volatile String error;
+
+        Job(Event event, boolean rotateCodes, long total, UserDetails requester) {
+            this.event = event;
+            this.eventId = event.getId();
+            this.rotateCodes = rotateCodes;
+            this.total = total;
+            this.requester = requester;
+        }
+
+        boolean isActive() {
+            return "QUEUED".equals(state) || "RUNNING".equals(state);
+        }
+
+        void begin() {
+            startNanos = System.nanoTime();
+            startedAt = LocalDateTime.now();
+            state = "RUNNING";
+        }
+
+        // Only the job's own thread writes progress
+        void advance(int tickets) {
+            processed += tickets;
+        }
+
+        void complete() {
+            finishedAt = LocalDateTime.now();
+            state = "COMPLETED";
+        }
+
+        void fail(String message) {
+            error = message;
+            finishedAt = LocalDateTime.now();
+            state = "FAILED";
+        }
+
+        long elapsedMillis() {
+            return startedAt == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+
+        QrRegenerationStatusDto toDto() {
+            long millis = elapsedMillis();
+            return QrRegenerationStatusDto.builder()
+                    .eventId(eventId)
+                    .state(state)
+                    .rotateCodes(rotateCodes)
+                    .totalTickets(total)
+                    .processedTickets(processed)
+                    .ticketsPerSecond(millis > 0 ? processed * 1000.0 / millis : 0)
+                    .startedAt(startedAt)
+                    .finishedAt(finishedAt)
+                    .error(error)
+                    .build();
+        }
+    }
+}
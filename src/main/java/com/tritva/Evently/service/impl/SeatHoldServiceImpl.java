@@ -0,0 +1,125 @@
+package com.tritva.Evently.service.impl;
+
+import com.tritva.Evently.model.HoldStatus;
+import com.tritva.Evently.model.entity.Event;
+import com.tritva.Evently.model.entity.SeatHold;
+import com.tritva.Evently.repository.EventRepository;
+import com.tritva.Evently.repository.SeatHoldRepository;
+import com.tritva.Evently.service.SeatHoldService;
+import com.tritva.Evently.service.SeatInventoryService;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SeatHoldServiceImpl implements SeatHoldService {
+
+    private final SeatHoldRepository seatHoldRepository;
+    private final EventRepository eventRepository;
+    private final SeatInventoryService seatInventoryService;
+
+    @Value("${app.holds.ttl-seconds:180}")
+    private long holdTtlSeconds;
+
+    @Value("${app.holds.sweep-batch-size:200}")
+    private int sweepBatchSize;
+
+    @Override
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public SeatHold placeHold(UUID eventId, int quantity) {
+        Event event = eventRepository.findById(eventId)
+                .orElseThrow(() -> new EntityNotFoundException("Event not found with ID: " + eventId));
+
+        // Committed on its own so the event row is not locked while M-Pesa is called
+        if (!seatInventoryService.claim(event, quantity)) {
+            log.warn("Could not hold {} seat(s) for event {}: sold out", quantity, event.getName());
+            throw new RuntimeException("Tickets for this event are sold out!");
+        }
+
+        SeatHold hold = SeatHold.builder()
+                .event(event)
+                .quantity(quantity)
+                .status(HoldStatus.ACTIVE)
+                .expiresAt(LocalDateTime.now().plusSeconds(holdTtlSeconds))
+                .build();
+
+        SeatHold savedHold = seatHoldRepository.save(hold);
+        log.info("Held {} seat(s) for event {} until {}", quantity, event.getName(), savedHold.getExpiresAt());
+
+        return savedHold;
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void attachCheckout(UUID holdId, String checkoutRequestId) {
+        seatHoldRepository.attachCheckoutRequestId(holdId, checkoutRequestId);
+    }
+
+    @Override
+    @Transactional
+    public boolean convertHold(UUID holdId) {
+        // Joins the issuing transaction so a failed issue leaves the hold active
+        boolean converted = seatHoldRepository.transition(holdId, HoldStatus.ACTIVE, HoldStatus.CONVERTED) == 1;
+        if (!converted) {
+            log.warn("Seat hold {} is no longer active", holdId);
+        }
+        return converted;
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void releaseHold(UUID holdId) {
+        seatHoldRepository.findById(holdId).ifPresent(hold -> release(hold, HoldStatus.RELEASED));
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void releaseHoldForCheckout(String checkoutRequestId) {
+        seatHoldRepository.findByCheckoutRequestId(checkoutRequestId)
+                .ifPresent(hold -> release(hold, HoldStatus.RELEASED));
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${app.holds.sweep-interval-ms:15000}")
+    @Transactional
+    public void sweepExpiredHolds() {
+        List<SeatHold> expired = seatHoldRepository.findExpired(
+                HoldStatus.ACTIVE, LocalDateTime.now(), PageRequest.of(0, sweepBatchSize));
+
+        if (expired.isEmpty()) {
+            return;
+        }
+
+        // One counter update per event rather than one per hold
+        Map<Event, Integer> seatsByEvent = new HashMap<>();
+        for (SeatHold hold : expired) {
+            if (seatHoldRepository.transition(hold.getId(), HoldStatus.ACTIVE, HoldStatus.EXPIRED) == 1) {
+                seatsByEvent.merge(hold.getEvent(), hold.getQuantity(), Integer::sum);
+            }
+        }
+
+        seatsByEvent.forEach(seatInventoryService::release);
+        log.info("Expired {} seat hold(s) across {} event(s)", expired.size(), seatsByEvent.size());
+    }
+
+    private void release(SeatHold hold, HoldStatus to) {
+        if (seatHoldRepository.transition(hold.getId(), HoldStatus.ACTIVE, to) == 1) {
+            seatInventoryService.release(hold.getEvent(), hold.getQuantity());
+            log.info("Released {} held seat(s) for hold {}", hold.getQuantity(), hold.getId());
+        }
+    }
+}
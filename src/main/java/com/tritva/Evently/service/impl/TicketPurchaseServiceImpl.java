@@ -1,22 +1,42 @@
 package com.tritva.Evently.service.impl;
 
+import com.tritva.Evently.event.PaymentSettledEvent;
 import com.tritva.Evently.model.Status;
 import com.tritva.Evently.model.dto.MpesaPaymentRequestDto;
 import com.tritva.Evently.model.dto.MpesaPaymentResponseDto;
 import com.tritva.Evently.model.dto.TicketPurchaseRequestDto;
 import com.tritva.Evently.model.dto.TicketRequestDto;
 import com.tritva.Evently.model.entity.Payment;
+import com.tritva.Evently.model.entity.SeatHold;
 import com.tritva.Evently.repository.PaymentRepository;
 import com.tritva.Evently.service.MpesaService;
+import com.tritva.Evently.service.PaymentReconciliationService;
+import com.tritva.Evently.service.SeatHoldService;
 import com.tritva.Evently.service.TicketPurchaseService;
 import com.tritva.Evently.service.TicketService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-
-import java.util.concurrent.CompletableFuture;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 @RequiredArgsConstructor
@@ -26,84 +46,194 @@ public class TicketPurchaseServiceImpl implements TicketPurchaseService {
     private final MpesaService mpesaService;
     private final TicketService ticketService;
     private final PaymentRepository paymentRepository;
+    private final SeatHoldService seatHoldService;
+    private final TaskScheduler taskScheduler;
+    private final PaymentReconciliationService reconciliationService;
+
+    // How long to wait for the M-Pesa callback before asking M-Pesa for the outcome
+    @Value("${app.payments.completion-timeout-seconds:120}")
+    private long completionTimeoutSeconds;
+
+    // Completed purchases younger than this are left to the settlement listener
+    @Value("${app.payments.ticket-issue.min-age-seconds:300}")
+    private long issueRetryMinAgeSeconds;
+
+    @Value("${app.payments.ticket-issue.max-attempts:5}")
+    private int issueMaxAttempts;
+
+    @Value("${app.payments.ticket-issue.batch-size:100}")
+    private int issueBatchSize;
+
+    // Timeout checks call STK Query, so they run here rather than on the shared scheduler thread
+    @Value("${app.payments.timeout-check.threads:4}")
+    private int timeoutCheckThreads;
+
+    @Value("${app.payments.timeout-check.queue-capacity:1000}")
+    private int timeoutCheckQueueCapacity;
+
+    private ThreadPoolExecutor timeoutChecks;
+
+    // Fallback timers for payments still waiting on a callback, by checkout request ID.
+    // In memory on the node that sent the push; reconciliation covers payments whose node went away.
+    private final Map<String, ScheduledFuture<?>> pendingTimeouts = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void start() {
+        AtomicInteger counter = new AtomicInteger();
+        timeoutChecks = new ThreadPoolExecutor(timeoutCheckThreads, timeoutCheckThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(timeoutCheckQueueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "payment-timeout-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                // The payment is still PENDING in the database, so the reconciliation sweep picks it up
+                (runnable, executor) -> log.warn("Payment timeout checks are saturated, leaving the payment to reconciliation"));
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        timeoutChecks.shutdown();
+        timeoutChecks.awaitTermination(30, TimeUnit.SECONDS);
+    }
 
+    // Not @Transactional: the hold, the STK push and the Payment insert each commit on their
+    // own, so a slow Daraja response never pins a pooled connection
     @Override
-    @Transactional
     public MpesaPaymentResponseDto purchaseTicket(TicketPurchaseRequestDto request) {
-        log.info("Processing ticket purchase for event {} with email {}",
-                request.getEventId(), request.getEmail());
+        log.info("Processing purchase of {} ticket(s) for event {} with email {}",
+                request.getQuantity(), request.getEventId(), request.getEmail());
 
-        // Initiate M-Pesa payment
+        // No point holding seats while M-Pesa is down
+        mpesaService.ensureAvailable();
+
+        // Hold the seats before asking the buyer to pay, so nobody pays for a sold out event
+        SeatHold hold = seatHoldService.placeHold(request.getEventId(), request.getQuantity());
+
+        // Initiate M-Pesa payment; the intent is stored with it for when the callback arrives
         MpesaPaymentRequestDto mpesaRequest = MpesaPaymentRequestDto.builder()
                 .phone(request.getPhoneNumber())
-                .amount(request.getAmount())
                 .eventId(request.getEventId())
+                .userId(request.getUserId())
+                .email(request.getEmail())
+                .quantity(request.getQuantity())
+                .holdId(hold.getId())
                 .build();
 
-        MpesaPaymentResponseDto mpesaResponse = mpesaService.initiateSTKPush(mpesaRequest);
+        MpesaPaymentResponseDto mpesaResponse;
+        try {
+            mpesaResponse = mpesaService.initiateSTKPush(mpesaRequest);
+        } catch (RuntimeException e) {
+            seatHoldService.releaseHold(hold.getId());
+            throw e;
+        }
+
+        // Push timed out: the hold stays until its callback claims the payment or it expires
+        String checkoutRequestId = mpesaResponse.getCheckoutRequestId();
+        if (checkoutRequestId == null) {
+            return mpesaResponse;
+        }
+
+        seatHoldService.attachCheckout(hold.getId(), checkoutRequestId);
 
-        // Start monitoring payment status in background
-        monitorPaymentAndCreateTicket(
-                mpesaResponse.getCheckoutRequestId(),
-                request
-        );
+        // Tickets are issued from the callback; this only fires if it never comes. The scheduler
+        // thread only hands the check over, so a slow STK Query never holds up other jobs.
+        pendingTimeouts.put(checkoutRequestId, taskScheduler.schedule(
+                () -> timeoutChecks.execute(() -> onPaymentTimeout(checkoutRequestId)),
+                Instant.now().plus(Duration.ofSeconds(completionTimeoutSeconds))));
 
         return mpesaResponse;
     }
 
     @Async
-    public void monitorPaymentAndCreateTicket(
-            String checkoutRequestId,
-            TicketPurchaseRequestDto request) {
-
-        log.info("Monitoring payment status for checkoutRequestId: {}", checkoutRequestId);
-
-        // Poll payment status for up to 2 minutes
-        int maxAttempts = 24; // 24 * 5 seconds = 2 minutes
-        int attempts = 0;
-
-        while (attempts < maxAttempts) {
-            try {
-                Thread.sleep(5000); // Wait 5 seconds between checks
-
-                Payment payment = paymentRepository.findByMpesaCheckoutRequestId(checkoutRequestId)
-                        .orElse(null);
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPaymentSettled(PaymentSettledEvent event) {
+        ScheduledFuture<?> timeout = pendingTimeouts.remove(event.checkoutRequestId());
+        if (timeout != null) {
+            timeout.cancel(false);
+        }
 
-                if (payment != null) {
-                    if (payment.getStatus() == Status.COMPLETED) {
-                        log.info("Payment completed. Creating ticket...");
+        if (event.status() == Status.COMPLETED) {
+            issueTickets(event.paymentId());
+        }
+    }
 
-                        // Create ticket
-                        TicketRequestDto ticketRequest = new TicketRequestDto();
-                        ticketRequest.setEventId(request.getEventId());
-                        ticketRequest.setUserId(request.getUserId());
-                        ticketRequest.setPaymentId(payment.getId());
-                        ticketRequest.setPrice(request.getAmount().doubleValue());
-                        ticketRequest.setPhoneNumber(request.getPhoneNumber());
+    private void onPaymentTimeout(String checkoutRequestId) {
+        pendingTimeouts.remove(checkoutRequestId);
 
-                        ticketService.createTicketAfterPayment(ticketRequest, request.getEmail());
+        Payment payment = paymentRepository.findByMpesaCheckoutRequestId(checkoutRequestId).orElse(null);
+        if (payment == null) {
+            return;
+        }
 
-                        log.info("Ticket created and sent to email: {}", request.getEmail());
-                        return;
+        if (payment.getStatus() == Status.COMPLETED) {
+            // Settled but the event was missed; issuance is idempotent per payment
+            issueTickets(payment.getId());
+        } else if (payment.getStatus() == Status.PENDING) {
+            // The buyer may still pay, so the seats stay held until M-Pesa says the payment failed
+            log.warn("No M-Pesa callback within {}s for checkoutRequestId: {}, querying its status",
+                    completionTimeoutSeconds, checkoutRequestId);
+            if (!reconciliationService.reconcile(payment.getId(), checkoutRequestId, payment.getShortCode())) {
+                log.info("Payment {} still has no final outcome; leaving it to reconciliation", checkoutRequestId);
+            }
+        }
+    }
 
-                    } else if (payment.getStatus() == Status.FAILED) {
-                        log.warn("Payment failed for checkoutRequestId: {}", checkoutRequestId);
-                        return;
-                    }
-                }
+    /**
+     * Retries ticket issuance for completed purchases that have no tickets, whether
+     * issuing failed or the node died before it ran. Gives up after max-attempts.
+     */
+    @Scheduled(fixedDelayString = "${app.payments.ticket-issue.retry-interval-ms:300000}")
+    public void retryTicketIssuance() {
+        LocalDateTime cutoff = LocalDateTime.now().minusSeconds(issueRetryMinAgeSeconds);
+        List<UUID> paymentIds = paymentRepository.findUnissuedTicketPurchases(cutoff, issueMaxAttempts, issueBatchSize);
+        if (paymentIds.isEmpty()) {
+            return;
+        }
 
-                attempts++;
+        log.info("Retrying ticket issuance for {} completed payment(s)", paymentIds.size());
+        paymentIds.forEach(this::issueTickets);
+    }
 
-            } catch (InterruptedException e) {
-                log.error("Payment monitoring interrupted", e);
-                Thread.currentThread().interrupt();
-                return;
-            } catch (Exception e) {
-                log.error("Error monitoring payment", e);
+    private void issueTickets(UUID paymentId) {
+        try {
+            Payment payment = paymentRepository.findById(paymentId).orElse(null);
+            if (payment == null || payment.getBuyerEmail() == null) {
+                // Plain payments made without a ticket purchase
                 return;
             }
+
+            int quantity = payment.getTicketQuantity() != null ? payment.getTicketQuantity() : 1;
+            log.info("Payment completed. Creating {} ticket(s)...", quantity);
+
+            TicketRequestDto ticketRequest = new TicketRequestDto();
+            ticketRequest.setEventId(payment.getEvent().getId());
+            ticketRequest.setUserId(payment.getUser() != null ? payment.getUser().getId() : null);
+            ticketRequest.setPaymentId(payment.getId());
+            ticketRequest.setHoldId(payment.getSeatHoldId());
+            ticketRequest.setQuantity(quantity);
+            // Payments from before unit prices were kept only have the rounded total
+            ticketRequest.setPrice(payment.getUnitPrice() != null
+                    ? payment.getUnitPrice()
+                    : payment.getAmount() / quantity);
+            ticketRequest.setPhoneNumber(payment.getPhoneNumber());
+
+            ticketService.createTicketsAfterPayment(ticketRequest, payment.getBuyerEmail());
+
+            log.info("Tickets created and sent to email: {}", payment.getBuyerEmail());
+        } catch (Exception e) {
+            log.error("Failed to issue tickets for payment {}", paymentId, e);
+            recordIssueFailure(paymentId, e);
         }
+    }
 
-        log.warn("Payment monitoring timed out for checkoutRequestId: {}", checkoutRequestId);
+    private void recordIssueFailure(UUID paymentId, Exception failure) {
+        String error = String.valueOf(failure.getMessage());
+        try {
+            paymentRepository.recordTicketIssueFailure(paymentId, error.length() > 500 ? error.substring(0, 500) : error);
+        } catch (Exception e) {
+            // Still picked up by the retry sweep, just without the attempt counted
+            log.error("Could not record ticket issue failure for payment {}", paymentId, e);
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,12 +1,9 @@
 package com.tritva.Evently.service.impl;
 
-import com.google.zxing.BarcodeFormat;
-import com.google.zxing.client.j2se.MatrixToImageWriter;
-import com.google.zxing.common.BitMatrix;
-import com.google.zxing.qrcode.QRCodeWriter;
 import com.tritva.Evently.mapper.EventMapper;
 import com.tritva.Evently.mapper.TicketMapper;
 import com.tritva.Evently.mapper.UserMapper;
+import com.tritva.Evently.model.FulfilmentStatus;
 import com.tritva.Evently.model.dto.TicketDto;
 import com.tritva.Evently.model.dto.TicketRequestDto;
 import com.tritva.Evently.model.entity.Event;
@@ -17,20 +14,26 @@ import com.tritva.Evently.repository.EventRepository;
 import com.tritva.Evently.repository.PaymentRepository;
 import com.tritva.Evently.repository.TicketRepository;
 import com.tritva.Evently.repository.UserRepository;
-import com.tritva.Evently.service.EmailService;
+import com.tritva.Evently.service.QrCodeService;
+import com.tritva.Evently.service.SeatHoldService;
+import com.tritva.Evently.service.SeatInventoryService;
+import com.tritva.Evently.service.TicketFulfilmentPipeline;
 import com.tritva.Evently.service.TicketService;
+import com.tritva.Evently.util.TicketCodeGenerator;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.io.ByteArrayOutputStream;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.Base64;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 @Service
@@ -38,6 +41,8 @@ import java.util.UUID;
 @Slf4j
 @Transactional
 public class TicketServiceImpl implements TicketService {
+    private static final int RECENTLY_ISSUED_CAPACITY = 10_000;
+
     private final TicketRepository ticketRepository;
     private final TicketMapper ticketMapper;
     private final UserRepository userRepository;
@@ -45,13 +50,23 @@ public class TicketServiceImpl implements TicketService {
     private final EventRepository eventRepository;
     private final EventMapper eventMapper;
     private final PaymentRepository paymentRepository;
-    private final EmailService emailService;
-
-    @Value("${app.qr.storage.path:qrcodes}")
-    private String qrStoragePath;
+    private final SeatHoldService seatHoldService;
+    private final SeatInventoryService seatInventoryService;
+    private final TicketCodeGenerator ticketCodeGenerator;
+    private final QrCodeService qrCodeService;
+    private final TicketFulfilmentPipeline fulfilmentPipeline;
+
+    // Payments whose tickets this node has issued recently, so callback retries skip the row lock
+    private final Set<UUID> recentlyIssuedPayments = Collections.newSetFromMap(
+            Collections.synchronizedMap(new LinkedHashMap<UUID, Boolean>(1024, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<UUID, Boolean> eldest) {
+                    return size() > RECENTLY_ISSUED_CAPACITY;
+                }
+            }));
 
     @Override
-    public synchronized TicketDto createTicket(TicketDto ticketDto) {
+    public TicketDto createTicket(TicketDto ticketDto) {
         log.info("Creating ticket for event {} by user {}", ticketDto.getEventId(), ticketDto.getUserId());
 
         // Fetch user and event
@@ -61,53 +76,70 @@ public class TicketServiceImpl implements TicketService {
         Event event = eventRepository.findById(ticketDto.getEventId())
                 .orElseThrow(() -> new EntityNotFoundException("Event not found with ID: " + ticketDto.getEventId()));
 
-        // Check if event has available tickets
-        if (event.isSoldOut()) {
-            log.warn("Event {} is sold out. Capacity: {}, Tickets sold: {}",
-                    event.getName(), event.getCapacity(), event.getTickets().size());
+        // Claim a seat; the conditional update only locks this event's row
+        if (!seatInventoryService.claim(event, 1)) {
+            log.warn("Event {} is sold out. Capacity: {}", event.getName(), event.getCapacity());
             throw new RuntimeException("Tickets for this event are sold out!");
         }
 
-        log.info("Event {} has {} tickets available", event.getName(), event.getAvailableTickets());
-
         // Map to entity
         Ticket ticket = ticketMapper.toEntity(ticketDto);
         ticket.setUser(user);
         ticket.setEvent(event);
 
         // Generate ticket number and verification code
-        ticket.setTicketNumber(generateTicketNumber());
-        ticket.setVerificationCode(generateVerificationCode());
+        TicketCodeGenerator.TicketCodes codes = ticketCodeGenerator.next();
+        ticket.setTicketNumber(codes.ticketNumber());
+        ticket.setVerificationCode(codes.verificationCode());
 
-        // Save ticket
+        // Save ticket, then sign its QR code now that it has an ID
         Ticket savedTicket = ticketRepository.save(ticket);
+        savedTicket.setQrCodeKey(qrCodeService.storeImage(savedTicket));
 
-        // Generate QR code
-        generateQRCode(savedTicket.getId());
-
-        log.info("Ticket created successfully. Remaining tickets: {}", event.getAvailableTickets());
+        log.info("Ticket created successfully for event {}", event.getName());
 
         // Return mapped DTO
         return ticketMapper.toDto(savedTicket);
     }
 
     @Override
-    public synchronized TicketDto createTicketAfterPayment(TicketRequestDto request, String email) {
-        log.info("Creating ticket after payment for event {}", request.getEventId());
+    public List<TicketDto> createTicketsAfterPayment(TicketRequestDto request, String email) {
+        int quantity = request.getQuantity();
+        log.info("Creating {} ticket(s) after payment for event {}", quantity, request.getEventId());
+
+        // Replayed payment we have just issued for: hand back the same tickets
+        UUID paymentId = request.getPaymentId();
+        if (paymentId != null && recentlyIssuedPayments.contains(paymentId)) {
+            log.info("Tickets for payment {} already issued, returning existing tickets", paymentId);
+            return findIssuedTickets(paymentId);
+        }
+
+        // Fetch payment if paymentId is provided. The row lock makes concurrent
+        // issuers for the same payment (callback retries, the monitor) take turns.
+        Payment payment = null;
+        if (paymentId != null) {
+            payment = paymentRepository.findByIdForUpdate(paymentId)
+                    .orElseThrow(() -> new EntityNotFoundException("Payment not found with ID: " + paymentId));
+
+            if (ticketRepository.existsByPaymentId(paymentId)) {
+                log.info("Tickets for payment {} already issued, returning existing tickets", paymentId);
+                recentlyIssuedPayments.add(paymentId);
+                return findIssuedTickets(paymentId);
+            }
+        }
 
         // Fetch event
         Event event = eventRepository.findById(request.getEventId())
                 .orElseThrow(() -> new EntityNotFoundException("Event not found with ID: " + request.getEventId()));
 
-        // Check if event has available tickets
-        if (event.isSoldOut()) {
+        // Seats held during the STK push are already counted; otherwise claim them now.
+        // The conditional update only locks this event's row.
+        boolean heldSeats = request.getHoldId() != null && seatHoldService.convertHold(request.getHoldId());
+        if (!heldSeats && !seatInventoryService.claim(event, quantity)) {
             log.error("Attempted to create ticket for sold out event: {}", event.getName());
             throw new RuntimeException("Tickets for this event are sold out!");
         }
 
-        log.info("Creating ticket. Event {} has {} tickets available out of {} capacity",
-                event.getName(), event.getAvailableTickets(), event.getCapacity());
-
         // Fetch user if userId is provided
         User user = null;
         if (request.getUserId() != null) {
@@ -115,39 +147,40 @@ public class TicketServiceImpl implements TicketService {
                     .orElseThrow(() -> new EntityNotFoundException("User not found with ID: " + request.getUserId()));
         }
 
-        // Fetch payment if paymentId is provided
-        Payment payment = null;
-        if (request.getPaymentId() != null) {
-            payment = paymentRepository.findById(request.getPaymentId())
-                    .orElseThrow(() -> new EntityNotFoundException("Payment not found with ID: " + request.getPaymentId()));
+        // Create tickets
+        List<Ticket> tickets = new ArrayList<>(quantity);
+        for (int i = 0; i < quantity; i++) {
+            TicketCodeGenerator.TicketCodes codes = ticketCodeGenerator.next();
+            tickets.add(Ticket.builder()
+                    .event(event)
+                    .user(user)
+                    .payment(payment)
+                    .paymentLine(payment != null ? i + 1 : null)
+                    .price(request.getPrice())
+                    .ticketNumber(codes.ticketNumber())
+                    .verificationCode(codes.verificationCode())
+                    .checkedIn(false)
+                    .fulfilmentStatus(FulfilmentStatus.PENDING)
+                    .deliveryEmail(email)
+                    .fulfilmentDueAt(fulfilmentPipeline.leaseDeadline())
+                    .build());
         }
 
-        // Create ticket
-        Ticket ticket = Ticket.builder()
-                .event(event)
-                .user(user)
-                .payment(payment)
-                .price(request.getPrice())
-                .ticketNumber(generateTicketNumber())
-                .verificationCode(generateVerificationCode())
-                .checkedIn(false)
-                .build();
-
-        // Save ticket
-        Ticket savedTicket = ticketRepository.save(ticket);
+        // Save all tickets in one batched insert; this is all the seat path waits for
+        List<Ticket> savedTickets = ticketRepository.saveAll(tickets);
 
-        // Generate QR code
-        String qrCodeUrl = generateQRCode(savedTicket.getId());
-        savedTicket.setQrCodeUrl(qrCodeUrl);
-        ticketRepository.save(savedTicket);
+        // QR rendering and email run in the fulfilment pipeline once this commits
+        fulfilmentPipeline.submit(savedTickets.stream().map(Ticket::getId).toList(), email);
 
-        // Send ticket via email
-        emailService.sendTicketEmail(email, savedTicket);
+        log.info("{} ticket(s) created successfully for event {}", savedTickets.size(), event.getName());
 
-        log.info("Ticket created successfully with number: {}. Remaining tickets: {}",
-                savedTicket.getTicketNumber(), event.getAvailableTickets());
+        if (paymentId != null) {
+            rememberIssuedAfterCommit(paymentId);
+        }
 
-        return ticketMapper.toDto(savedTicket);
+        return savedTickets.stream()
+                .map(ticketMapper::toDto)
+                .toList();
     }
 
     @Override
@@ -187,7 +220,7 @@ public class TicketServiceImpl implements TicketService {
         List<Ticket> tickets = ticketRepository.findByEventId(eventId);
 
         log.info("Event {} has {} tickets sold out of {} capacity",
-                event.getName(), tickets.size(), event.getCapacity());
+                event.getName(), event.getTicketsSold(), event.getCapacity());
 
         return tickets.stream()
                 .map(ticketMapper::toDto)
@@ -203,9 +236,10 @@ public class TicketServiceImpl implements TicketService {
 
         Event event = ticket.getEvent();
         ticketRepository.delete(ticket);
+        seatInventoryService.release(event, 1);
 
-        log.info("Ticket {} deleted successfully. Event {} now has {} available tickets",
-                id, event.getName(), event.getAvailableTickets());
+        log.info("Ticket {} deleted successfully. Seat returned to event {}",
+                id, event.getName());
     }
 
     @Override
@@ -214,28 +248,14 @@ public class TicketServiceImpl implements TicketService {
             Ticket ticket = ticketRepository.findById(ticketId)
                     .orElseThrow(() -> new EntityNotFoundException("Ticket not found"));
 
-            // QR code content: ticket verification URL
-            String qrContent = String.format("TICKET:%s:CODE:%s",
-                    ticket.getTicketNumber(),
-                    ticket.getVerificationCode());
-
-            QRCodeWriter qrCodeWriter = new QRCodeWriter();
-            BitMatrix bitMatrix = qrCodeWriter.encode(qrContent, BarcodeFormat.QR_CODE, 300, 300);
-
-            ByteArrayOutputStream pngOutputStream = new ByteArrayOutputStream();
-            MatrixToImageWriter.writeToStream(bitMatrix, "PNG", pngOutputStream);
-
-            // Convert to Base64
-            String base64QR = Base64.getEncoder().encodeToString(pngOutputStream.toByteArray());
-            String qrCodeUrl = "data:image/png;base64," + base64QR;
-
-            // Update ticket with QR code URL
-            ticket.setQrCodeUrl(qrCodeUrl);
+            // Update ticket with the stored image key
+            ticket.setQrCodeKey(qrCodeService.storeImage(ticket));
             ticketRepository.save(ticket);
+            qrCodeService.evict(ticketId);
 
             log.info("QR code generated for ticket: {}", ticket.getTicketNumber());
 
-            return qrCodeUrl;
+            return qrCodeService.imageUrl(ticketId);
 
         } catch (Exception e) {
             log.error("Error generating QR code", e);
@@ -243,13 +263,22 @@ public class TicketServiceImpl implements TicketService {
         }
     }
 
-    private String generateTicketNumber() {
-        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-        String random = UUID.randomUUID().toString().substring(0, 6).toUpperCase();
-        return "TKT-" + timestamp + "-" + random;
+    private List<TicketDto> findIssuedTickets(UUID paymentId) {
+        return ticketRepository.findByPaymentId(paymentId).stream()
+                .map(ticketMapper::toDto)
+                .toList();
     }
 
-    private String generateVerificationCode() {
-        return UUID.randomUUID().toString().replace("-", "").substring(0, 12).toUpperCase();
+    private void rememberIssuedAfterCommit(UUID paymentId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            recentlyIssuedPayments.add(paymentId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                recentlyIssuedPayments.add(paymentId);
+            }
+        });
     }
 }
\ No newline at end of file
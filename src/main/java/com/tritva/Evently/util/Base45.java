@@ -0,0 +1,75 @@
+package com.tritva.Evently.util;
+
+import java.util.Arrays;
+
+/**
+ * Base45 (RFC 9285). Its alphabet is exactly the QR alphanumeric set, so an
+ * encoded payload packs into a QR code at 5.5 bits per character instead of 8.
+ */
+public final class Base45 {
+
+    private static final char[] ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:".toCharArray();
+    private static final int[] ALPHABET_INDEX = new int[128];
+
+    static {
+        Arrays.fill(ALPHABET_INDEX, -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            ALPHABET_INDEX[ALPHABET[i]] = i;
+        }
+    }
+
+    private Base45() {
+    }
+
+    public static String encode(byte[] bytes) {
+        StringBuilder out = new StringBuilder((bytes.length / 2) * 3 + 2);
+        int i = 0;
+        for (; i + 1 < bytes.length; i += 2) {
+            int n = ((bytes[i] & 0xFF) << 8) | (bytes[i + 1] & 0xFF);
+            out.append(ALPHABET[n % 45]).append(ALPHABET[(n / 45) % 45]).append(ALPHABET[n / 2025]);
+        }
+        if (i < bytes.length) {
+            int n = bytes[i] & 0xFF;
+            out.append(ALPHABET[n % 45]).append(ALPHABET[n / 45]);
+        }
+        return out.toString();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the input is not valid Base45
+     */
+    public static byte[] decode(String text) {
+        int length = text.length();
+        if (length % 3 == 1) {
+            throw new IllegalArgumentException("Invalid Base45 length");
+        }
+
+        byte[] out = new byte[(length / 3) * 2 + (length % 3 == 2 ? 1 : 0)];
+        int pos = 0;
+        int i = 0;
+        for (; i + 2 < length; i += 3) {
+            int n = value(text.charAt(i)) + value(text.charAt(i + 1)) * 45 + value(text.charAt(i + 2)) * 2025;
+            if (n > 0xFFFF) {
+                throw new IllegalArgumentException("Invalid Base45 triplet");
+            }
+            out[pos++] = (byte) (n >>> 8);
+            out[pos++] = (byte) n;
+        }
+        if (i < length) {
+            int n = value(text.charAt(i)) + value(text.charAt(i + 1)) * 45;
+            if (n > 0xFF) {
+                throw new IllegalArgumentException("Invalid Base45 pair");
+            }
+            out[pos] = (byte) n;
+        }
+        return out;
+    }
+
+    private static int value(char c) {
+        int v = c < 128 ? ALPHABET_INDEX[c] : -1;
+        if (v < 0) {
+            throw new IllegalArgumentException("Invalid Base45 character: " + c);
+        }
+        return v;
+    }
+}
@@ -0,0 +1,205 @@
+package com.tritva.Evently.util;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+import com.google.zxing.qrcode.encoder.Encoder;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Renders QR codes straight from the encoder's module matrix. PNGs are written
+ * as 1-bit grayscale without going through AWT, and each thread reuses its own
+ * deflater, checksum and scratch buffers, so a render allocates little beyond
+ * the encoder's matrix and the returned bytes.
+ */
+@Component
+public class QrRenderer {
+
+    // Modules of light border the QR spec asks for around the symbol
+    private static final int QUIET_ZONE = 4;
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final byte[] IHDR = "IHDR".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] IDAT = "IDAT".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] IEND = "IEND".getBytes(StandardCharsets.US_ASCII);
+
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * PNG no larger than {@code targetSize} pixels square, scaled by a whole
+     * number of pixels per module so edges stay sharp.
+     */
+    public byte[] png(String content, int targetSize) {
+        ByteMatrix matrix = encode(content);
+        Scratch s = scratch.get();
+
+        int modules = matrix.getWidth() + 2 * QUIET_ZONE;
+        int scale = Math.max(1, targetSize / modules);
+        int size = modules * scale;
+        int rowBytes = (size + 7) >>> 3;
+
+        // Each scanline is a filter byte (0 = none) followed by packed pixels, 1 = white
+        byte[] row = s.row(rowBytes + 1);
+        Deflater deflater = s.deflater;
+        deflater.reset();
+        s.idat.clear();
+
+        for (int y = 0; y < modules; y++) {
+            Arrays.fill(row, 1, rowBytes + 1, (byte) 0xFF);
+            row[0] = 0;
+            for (int x = 0; x < modules; x++) {
+                if (isDark(matrix, x - QUIET_ZONE, y - QUIET_ZONE)) {
+                    for (int px = x * scale, end = px + scale; px < end; px++) {
+                        row[1 + (px >>> 3)] &= (byte) ~(0x80 >>> (px & 7));
+                    }
+                }
+            }
+            // A module row is the same scanline repeated scale times
+            for (int i = 0; i < scale; i++) {
+                deflater.setInput(row, 0, rowBytes + 1);
+                while (!deflater.needsInput()) {
+                    s.drain(deflater);
+                }
+            }
+        }
+        deflater.finish();
+        while (!deflater.finished()) {
+            s.drain(deflater);
+        }
+
+        int idatLength = s.idat.size;
+        byte[] out = new byte[PNG_SIGNATURE.length + (12 + 13) + (12 + idatLength) + 12];
+        ByteBuffer buffer = ByteBuffer.wrap(out);
+        buffer.put(PNG_SIGNATURE);
+
+        int start = beginChunk(buffer, IHDR, 13);
+        buffer.putInt(size).putInt(size)
+                .put((byte) 1)  // bit depth
+                .put((byte) 0)  // grayscale
+                .put((byte) 0)  // deflate
+                .put((byte) 0)  // adaptive filtering
+                .put((byte) 0); // no interlace
+        endChunk(buffer, start, s.crc);
+
+        start = beginChunk(buffer, IDAT, idatLength);
+        buffer.put(s.idat.data, 0, idatLength);
+        endChunk(buffer, start, s.crc);
+
+        start = beginChunk(buffer, IEND, 0);
+        endChunk(buffer, start, s.crc);
+
+        return out;
+    }
+
+    /**
+     * Compact SVG: one path, one subpath per horizontal run of dark modules,
+     * in module units so it scales to any size.
+     */
+    public String svg(String content) {
+        ByteMatrix matrix = encode(content);
+        int width = matrix.getWidth();
+        int modules = width + 2 * QUIET_ZONE;
+
+        StringBuilder svg = scratch.get().svg;
+        svg.setLength(0);
+        svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 ")
+                .append(modules).append(' ').append(modules)
+                .append("\" shape-rendering=\"crispEdges\">")
+                .append("<rect width=\"100%\" height=\"100%\" fill=\"#fff\"/>")
+                .append("<path fill=\"#000\" d=\"");
+
+        for (int y = 0; y < width; y++) {
+            int x = 0;
+            while (x < width) {
+                if (matrix.get(x, y) != 1) {
+                    x++;
+                    continue;
+                }
+                int run = 1;
+                while (x + run < width && matrix.get(x + run, y) == 1) {
+                    run++;
+                }
+                svg.append('M').append(x + QUIET_ZONE).append(' ').append(y + QUIET_ZONE)
+                        .append('h').append(run).append("v1h-").append(run).append('z');
+                x += run;
+            }
+        }
+
+        return svg.append("\"/></svg>").toString();
+    }
+
+    private static ByteMatrix encode(String content) {
+        try {
+            return Encoder.encode(content, ErrorCorrectionLevel.L).getMatrix();
+        } catch (WriterException e) {
+            throw new IllegalArgumentException("Content cannot be encoded as a QR code", e);
+        }
+    }
+
+    private static boolean isDark(ByteMatrix matrix, int x, int y) {
+        return x >= 0 && y >= 0 && x < matrix.getWidth() && y < matrix.getHeight() && matrix.get(x, y) == 1;
+    }
+
+    // Writes length and type, returns where the checksummed part starts
+    private static int beginChunk(ByteBuffer buffer, byte[] type, int length) {
+        buffer.putInt(length);
+        int start = buffer.position();
+        buffer.put(type);
+        return start;
+    }
+
+    private static void endChunk(ByteBuffer buffer, int start, CRC32 crc) {
+        crc.reset();
+        crc.update(buffer.array(), start, buffer.position() - start);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    // Per-thread state, reused across renders
+    private static final class Scratch {
+        final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        final CRC32 crc = new CRC32();
+        final GrowableBuffer idat = new GrowableBuffer(2048);
+        final byte[] chunk = new byte[4096];
+        final StringBuilder svg = new StringBuilder(8192);
+        byte[] row = new byte[64];
+
+        byte[] row(int length) {
+            if (row.length < length) {
+                row = new byte[length];
+            }
+            return row;
+        }
+
+        void drain(Deflater deflater) {
+            int n = deflater.deflate(chunk);
+            idat.write(chunk, n);
+        }
+    }
+
+    private static final class GrowableBuffer {
+        byte[] data;
+        int size;
+
+        GrowableBuffer(int capacity) {
+            this.data = new byte[capacity];
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        void write(byte[] bytes, int length) {
+            if (size + length > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + length));
+            }
+            System.arraycopy(bytes, 0, data, size, length);
+            size += length;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.tritva.Evently.util;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Issues ticket numbers and verification codes that are unique by construction.
+ * Each ticket gets one value from a block of a shared database sequence (hi/lo),
+ * so codes never collide across nodes and inserts never need a retry.
+ * The sequence steps by the block size, and a value v reserves v - step + 1 to v,
+ * so nodes always agree on the blocks even if the step changes while they run.
+ * SchemaUpgrades creates the sequence and keeps its step at app.tickets.code-block-size.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TicketCodeGenerator {
+
+    // Crockford base32: no I, L, O or U, so codes survive being read out at a gate
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final int[] ALPHABET_INDEX = new int[128];
+    public static final String SEQUENCE_NAME = "ticket_code_block_seq";
+    private static final String RESERVE_BLOCK = "SELECT nextval('" + SEQUENCE_NAME + "') AS last, increment_by " +
+            "FROM pg_sequences WHERE schemaname = current_schema() AND sequencename = '" + SEQUENCE_NAME + "'";
+    private static final String TICKET_PREFIX = "TKT-";
+
+    // Sequence values are encoded in 9 base32 characters (44 of the 45 bits are used)
+    private static final int BODY_LENGTH = 9;
+    private static final int HALF_BITS = 22;
+    private static final long HALF_MASK = (1L << HALF_BITS) - 1;
+    private static final long MAX_SEQUENCE = 1L << (2 * HALF_BITS);
+
+    static {
+        Arrays.fill(ALPHABET_INDEX, -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            ALPHABET_INDEX[ALPHABET[i]] = i;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Must be unique per node (0-1023)
+    @Value("${app.tickets.node-id:1}")
+    private int nodeId;
+
+    @Value("${app.tickets.code-secret:${jwt.secret}}")
+    private String codeSecret;
+
+    private final Object refillLock = new Object();
+    private char[] nodePrefix;
+    private int[] roundKeys;
+    private volatile Block block = new Block(0, 0);
+
+    public record TicketCodes(String ticketNumber, String verificationCode) {
+    }
+
+    @PostConstruct
+    void init() {
+        if (nodeId < 0 || nodeId >= ALPHABET.length * ALPHABET.length) {
+            throw new IllegalStateException("app.tickets.node-id must be between 0 and 1023");
+        }
+
+        nodePrefix = new char[]{ALPHABET[nodeId / ALPHABET.length], ALPHABET[nodeId % ALPHABET.length]};
+        roundKeys = deriveRoundKeys(codeSecret);
+        log.info("Ticket code generator ready for node {} (prefix {})", nodeId, new String(nodePrefix));
+    }
+
+    /**
+     * Codes for one new ticket. The ticket number carries the plain sequence;
+     * the verification code carries it through a keyed permutation so it cannot be guessed from the number.
+     */
+    public TicketCodes next() {
+        long sequence = nextSequence();
+
+        char[] number = new char[TICKET_PREFIX.length() + 2 + 1 + BODY_LENGTH + 1];
+        TICKET_PREFIX.getChars(0, TICKET_PREFIX.length(), number, 0);
+        int pos = TICKET_PREFIX.length();
+        number[pos++] = nodePrefix[0];
+        number[pos++] = nodePrefix[1];
+        number[pos++] = '-';
+        encode(sequence, number, pos);
+        number[number.length - 1] = checkChar(number, TICKET_PREFIX.length(), number.length - 1);
+
+        return new TicketCodes(new String(number), verificationCode(sequence));
+    }
+
+    /**
+     * A fresh verification code for reissuing an existing ticket; the ticket number stays the same.
+     */
+    public String nextVerificationCode() {
+        return verificationCode(nextSequence());
+    }
+
+    /**
+     * Cheap rejection of mistyped or made-up codes before any lookup.
+     */
+    public boolean hasValidCheckChar(String code) {
+        if (code == null || code.length() < 2) {
+            return false;
+        }
+        char[] chars = code.toCharArray();
+        int from = code.startsWith(TICKET_PREFIX) ? TICKET_PREFIX.length() : 0;
+        for (int i = from; i < chars.length; i++) {
+            if (chars[i] != '-' && indexOf(chars[i]) < 0) {
+                return false;
+            }
+        }
+        return checkChar(chars, from, chars.length - 1) == chars[chars.length - 1];
+    }
+
+    private String verificationCode(long sequence) {
+        char[] code = new char[2 + BODY_LENGTH + 1];
+        code[0] = nodePrefix[0];
+        code[1] = nodePrefix[1];
+        encode(permute(sequence), code, 2);
+        code[code.length - 1] = checkChar(code, 0, code.length - 1);
+        return new String(code);
+    }
+
+    private long nextSequence() {
+        while (true) {
+            Block current = block;
+            long value = current.cursor.getAndIncrement();
+            if (value < current.end) {
+                return value;
+            }
+
+            // Only one thread reserves the next block; the rest loop onto it
+            synchronized (refillLock) {
+                if (block == current) {
+                    block = reserveBlock();
+                }
+            }
+        }
+    }
+
+    private Block reserveBlock() {
+        // The step is read in the same statement, so the block is exactly what nextval moved past
+        Map<String, Object> row = jdbcTemplate.queryForMap(RESERVE_BLOCK);
+        long last = ((Number) row.get("last")).longValue();
+        long start = last - ((Number) row.get("increment_by")).longValue() + 1;
+        if (last >= MAX_SEQUENCE) {
+            throw new IllegalStateException("Ticket code sequence exhausted");
+        }
+        log.debug("Reserved ticket code block {} - {}", start, last);
+        return new Block(start, last + 1);
+    }
+
+    // Four-round Feistel network over 44 bits: a bijection, so distinct inputs stay distinct
+    private long permute(long value) {
+        long left = (value >>> HALF_BITS) & HALF_MASK;
+        long right = value & HALF_MASK;
+        for (int key : roundKeys) {
+            long next = left ^ round(right, key);
+            left = right;
+            right = next;
+        }
+        return (left << HALF_BITS) | right;
+    }
+
+    private static long round(long half, int key) {
+        int x = (int) half * 0x9E3779B1 ^ key;
+        x ^= x >>> 15;
+        x *= 0x85EBCA6B;
+        x ^= x >>> 13;
+        return x & HALF_MASK;
+    }
+
+    private static void encode(long value, char[] target, int offset) {
+        for (int i = offset + BODY_LENGTH - 1; i >= offset; i--) {
+            target[i] = ALPHABET[(int) (value & 31)];
+            value >>>= 5;
+        }
+    }
+
+    // Luhn mod 32 over the code characters; dashes are skipped
+    private static char checkChar(char[] chars, int from, int to) {
+        int base = ALPHABET.length;
+        int factor = 2;
+        int sum = 0;
+        for (int i = to - 1; i >= from; i--) {
+            if (chars[i] == '-') {
+                continue;
+            }
+            int addend = factor * indexOf(chars[i]);
+            factor = factor == 2 ? 1 : 2;
+            sum += addend / base + addend % base;
+        }
+        return ALPHABET[(base - sum % base) % base];
+    }
+
+    private static int indexOf(char c) {
+        return c < ALPHABET_INDEX.length ? ALPHABET_INDEX[c] : -1;
+    }
+
+    private static int[] deriveRoundKeys(String secret) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(secret.getBytes(StandardCharsets.UTF_8));
+            ByteBuffer buffer = ByteBuffer.wrap(digest);
+            return new int[]{buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt()};
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static final class Block {
+        private final AtomicLong cursor;
+        private final long end;
+
+        Block(long start, long end) {
+            this.cursor = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
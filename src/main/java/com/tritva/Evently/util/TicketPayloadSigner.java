@@ -0,0 +1,145 @@
+package com.tritva.Evently.util;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Signs ticket QR payloads with Ed25519 so a scanner holding only the public
+ * key can tell a genuine ticket from a forged one without reaching the server.
+ *
+ * <p>Payload: {@code EV1:} followed by Base45 of
+ * version (1) | event ID (16) | ticket ID (16) | expiry, epoch seconds (4) |
+ * code length (1) | verification code (ASCII) | signature (64).
+ */
+@Component
+@Slf4j
+public class TicketPayloadSigner {
+
+    public static final String PREFIX = "EV1:";
+    public static final String ALGORITHM = "Ed25519";
+
+    private static final byte VERSION = 1;
+    private static final int HEADER_LENGTH = 1 + 16 + 16 + 4 + 1;
+    private static final int SIGNATURE_LENGTH = 64;
+
+    // Base64 PKCS#8 / X.509 keys; required, never derived from another secret
+    @Value("${app.tickets.signing.private-key}")
+    private String privateKeyBase64;
+
+    @Value("${app.tickets.signing.public-key}")
+    private String publicKeyBase64;
+
+    private PrivateKey privateKey;
+    private PublicKey publicKey;
+
+    private final ThreadLocal<Signature> signatures = ThreadLocal.withInitial(() -> {
+        try {
+            return Signature.getInstance(ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Ed25519 not available", e);
+        }
+    });
+
+    public record SignedTicket(UUID eventId, UUID ticketId, Instant expiresAt, String verificationCode) {
+    }
+
+    @PostConstruct
+    void init() throws GeneralSecurityException {
+        if (privateKeyBase64.isBlank() || publicKeyBase64.isBlank()) {
+            throw new IllegalStateException(
+                    "app.tickets.signing.private-key and app.tickets.signing.public-key must both be set");
+        }
+        KeyFactory keyFactory = KeyFactory.getInstance(ALGORITHM);
+        privateKey = keyFactory.generatePrivate(new PKCS8EncodedKeySpec(Base64.getDecoder().decode(privateKeyBase64.trim())));
+        publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(Base64.getDecoder().decode(publicKeyBase64.trim())));
+
+        // A mismatched pair would sign tickets no scanner accepts
+        UUID probe = new UUID(0L, 0L);
+        if (verify(sign(probe, probe, Instant.EPOCH, "probe")) == null) {
+            throw new IllegalStateException("Ticket signing public key does not match the private key");
+        }
+        log.info("Ticket payload signing key loaded from configuration");
+    }
+
+    public String sign(UUID eventId, UUID ticketId, Instant expiresAt, String verificationCode) {
+        byte[] code = verificationCode.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer payload = ByteBuffer.allocate(HEADER_LENGTH + code.length + SIGNATURE_LENGTH);
+        payload.put(VERSION)
+                .putLong(eventId.getMostSignificantBits()).putLong(eventId.getLeastSignificantBits())
+                .putLong(ticketId.getMostSignificantBits()).putLong(ticketId.getLeastSignificantBits())
+                .putInt((int) expiresAt.getEpochSecond())
+                .put((byte) code.length)
+                .put(code);
+
+        try {
+            Signature signature = signatures.get();
+            signature.initSign(privateKey);
+            signature.update(payload.array(), 0, payload.position());
+            payload.put(signature.sign());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to sign ticket payload", e);
+        }
+        return PREFIX + Base45.encode(payload.array());
+    }
+
+    public boolean isSignedPayload(String content) {
+        return content != null && content.startsWith(PREFIX);
+    }
+
+    /**
+     * Decoded payload, or {@code null} if it is malformed or the signature does not match.
+     * Expiry is left to the caller.
+     */
+    public SignedTicket verify(String content) {
+        if (!isSignedPayload(content)) {
+            return null;
+        }
+        try {
+            byte[] bytes = Base45.decode(content.substring(PREFIX.length()));
+            if (bytes.length < HEADER_LENGTH + SIGNATURE_LENGTH || bytes[0] != VERSION) {
+                return null;
+            }
+            ByteBuffer payload = ByteBuffer.wrap(bytes);
+            payload.get();
+            UUID eventId = new UUID(payload.getLong(), payload.getLong());
+            UUID ticketId = new UUID(payload.getLong(), payload.getLong());
+            Instant expiresAt = Instant.ofEpochSecond(Integer.toUnsignedLong(payload.getInt()));
+            int codeLength = payload.get() & 0xFF;
+            if (bytes.length != HEADER_LENGTH + codeLength + SIGNATURE_LENGTH) {
+                return null;
+            }
+            String code = new String(bytes, HEADER_LENGTH, codeLength, StandardCharsets.US_ASCII);
+
+            Signature signature = signatures.get();
+            signature.initVerify(publicKey);
+            signature.update(bytes, 0, HEADER_LENGTH + codeLength);
+            if (!signature.verify(bytes, HEADER_LENGTH + codeLength, SIGNATURE_LENGTH)) {
+                return null;
+            }
+            return new SignedTicket(eventId, ticketId, expiresAt, code);
+
+        } catch (IllegalArgumentException | GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    // X.509 encoding, as scanners import it
+    public String publicKeyBase64() {
+        return Base64.getEncoder().encodeToString(publicKey.getEncoded());
+    }
+}
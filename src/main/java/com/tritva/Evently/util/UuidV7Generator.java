@@ -0,0 +1,61 @@
+package com.tritva.Evently.util;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.hibernate.generator.EventTypeSets;
+
+import java.security.SecureRandom;
+import java.util.EnumSet;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hibernate generator for RFC 9562 UUIDv7 values: a 48-bit millisecond timestamp,
+ * a 12-bit counter that keeps IDs from one node strictly increasing within the same
+ * millisecond, and 62 random bits. Existing random (v4) IDs are still plain UUIDs
+ * in the same column, so they keep working next to the new ones.
+ */
+public class UuidV7Generator implements BeforeExecutionGenerator {
+
+    // IDs appear in public URLs, so the random part must not be predictable
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // Last issued (timestamp << 12 | counter), shared by all entities on this node
+    private static final AtomicLong LAST = new AtomicLong();
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object owner, Object currentValue, EventType eventType) {
+        return next();
+    }
+
+    @Override
+    public EnumSet<EventType> getEventTypes() {
+        return EventTypeSets.INSERT_ONLY;
+    }
+
+    public static UUID next() {
+        long state = nextState();
+        long timestamp = state >>> 12;
+        long counter = state & 0xFFF;
+
+        long msb = (timestamp << 16) | 0x7000L | counter;
+        long lsb = RANDOM.nextLong() & 0x3FFFFFFFFFFFFFFFL | 0x8000000000000000L;
+
+        return new UUID(msb, lsb);
+    }
+
+    private static long nextState() {
+        while (true) {
+            long last = LAST.get();
+            long now = System.currentTimeMillis() << 12;
+
+            // New millisecond: restart the counter; same or earlier (clock step back): count up.
+            // A full counter carries into the timestamp, which keeps the order intact.
+            long next = now > last ? now : last + 1;
+            if (LAST.compareAndSet(last, next)) {
+                return next;
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.tritva.evently.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.tritva.Evently.util.QrRenderer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the zxing writer + AWT path the service used to take against
+ * QrRenderer. Run the main method from the IDE, or after test-compile:
+ * java -cp target/test-classes:target/classes:<test classpath> com.tritva.evently.benchmark.QrRenderBenchmark
+ * Add -prof gc to the JMH options to see bytes allocated per render.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class QrRenderBenchmark {
+
+    private final QrRenderer renderer = new QrRenderer();
+    private String content;
+    private int counter;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        content = "TICKET:TKT-01-0000000001:CODE:01ABCDEFGHJK";
+    }
+
+    // Vary the content slightly so nothing can be cached between calls
+    private String nextContent() {
+        return content + (counter++ & 0xFF);
+    }
+
+    @Benchmark
+    public byte[] zxingWriterPng() throws Exception {
+        BitMatrix bitMatrix = new QRCodeWriter().encode(nextContent(), BarcodeFormat.QR_CODE, 300, 300);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MatrixToImageWriter.writeToStream(bitMatrix, "PNG", out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] rendererPng() {
+        return renderer.png(nextContent(), 300);
+    }
+
+    @Benchmark
+    public String rendererSvg() {
+        return renderer.svg(nextContent());
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(QrRenderBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,155 @@
+package com.tritva.evently.checkin;
+
+import com.tritva.Evently.model.dto.CheckInResultDto;
+import com.tritva.Evently.model.entity.Event;
+import com.tritva.Evently.repository.EventRepository;
+import com.tritva.Evently.repository.TicketRepository;
+import com.tritva.Evently.service.impl.CheckInServiceImpl;
+import com.tritva.Evently.util.TicketPayloadSigner;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Gate check-in against mocked repositories: who may scan, and which scans reach the database
+class CheckInServiceTest {
+
+    private static final String ORGANISER = "organiser@test.local";
+
+    private final UUID eventId = UUID.randomUUID();
+    private final UUID ticketId = UUID.randomUUID();
+
+    private TicketRepository ticketRepository;
+    private CheckInServiceImpl checkInService;
+
+    private record View(UUID id, String ticketNumber, String verificationCode, Boolean checkedIn)
+            implements TicketRepository.CheckInView {
+        @Override
+        public UUID getId() {
+            return id;
+        }
+
+        @Override
+        public String getTicketNumber() {
+            return ticketNumber;
+        }
+
+        @Override
+        public String getVerificationCode() {
+            return verificationCode;
+        }
+
+        @Override
+        public Boolean getCheckedIn() {
+            return checkedIn;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        ticketRepository = mock(TicketRepository.class);
+        EventRepository eventRepository = mock(EventRepository.class);
+        TicketPayloadSigner signer = mock(TicketPayloadSigner.class);
+
+        when(eventRepository.findById(eventId)).thenReturn(Optional.of(Event.builder().id(eventId).name("Gala").build()));
+        when(eventRepository.findOrganiserEmailById(eventId)).thenReturn(Optional.of(ORGANISER));
+        when(ticketRepository.findCheckInViewsByEventId(eventId))
+                .thenReturn(List.of(new View(ticketId, "EVT-0001", "CODE-1", false)));
+
+        checkInService = new CheckInServiceImpl(ticketRepository, eventRepository, signer);
+    }
+
+    @Test
+    void otherOrganisersCannotRunTheEventsDoors() {
+        UserDetails stranger = user("someone-else@test.local", "ORGANISER");
+
+        assertThatThrownBy(() -> checkInService.openDoors(eventId, stranger)).isInstanceOf(AccessDeniedException.class);
+        assertThatThrownBy(() -> checkInService.checkIn(eventId, "CODE-1", stranger))
+                .isInstanceOf(AccessDeniedException.class);
+
+        checkInService.openDoors(eventId, user(ORGANISER, "ORGANISER"));
+        assertThatThrownBy(() -> checkInService.checkIn(eventId, "CODE-1", stranger))
+                .isInstanceOf(AccessDeniedException.class);
+        assertThatThrownBy(() -> checkInService.closeDoors(eventId, stranger)).isInstanceOf(AccessDeniedException.class);
+
+        verify(ticketRepository, never()).checkInById(any(), anyString());
+        verify(ticketRepository, never()).checkInByCode(any(), anyString());
+    }
+
+    @Test
+    void adminsMayRunAnyEventsDoors() {
+        UserDetails admin = user("admin@test.local", "ADMIN");
+        when(ticketRepository.checkInById(ticketId, "CODE-1")).thenReturn(1);
+
+        assertThat(checkInService.openDoors(eventId, admin)).isEqualTo(1);
+        assertThat(checkInService.checkIn(eventId, "CODE-1", admin).isAdmitted()).isTrue();
+    }
+
+    @Test
+    void admitsATicketOnceAndAnswersRepeatsFromTheIndex() {
+        UserDetails organiser = user(ORGANISER, "ORGANISER");
+        when(ticketRepository.checkInById(ticketId, "CODE-1")).thenReturn(1);
+        checkInService.openDoors(eventId, organiser);
+
+        CheckInResultDto first = checkInService.checkIn(eventId, "CODE-1", organiser);
+        CheckInResultDto again = checkInService.checkIn(eventId, "TICKET:EVT-0001:CODE:CODE-1", organiser);
+
+        assertThat(first.isAdmitted()).isTrue();
+        assertThat(first.getTicketNumber()).isEqualTo("EVT-0001");
+        assertThat(again.isAdmitted()).isFalse();
+        assertThat(again.getMessage()).isEqualTo("Ticket already checked in");
+        verify(ticketRepository, times(1)).checkInById(ticketId, "CODE-1");
+    }
+
+    @Test
+    void anotherNodesAdmissionWins() {
+        UserDetails organiser = user(ORGANISER, "ORGANISER");
+        // Checked in elsewhere after this node loaded its index
+        when(ticketRepository.checkInById(ticketId, "CODE-1")).thenReturn(0);
+        checkInService.openDoors(eventId, organiser);
+
+        CheckInResultDto result = checkInService.checkIn(eventId, "CODE-1", organiser);
+
+        assertThat(result.isAdmitted()).isFalse();
+        assertThat(result.getTicketId()).isEqualTo(ticketId);
+    }
+
+    @Test
+    void unknownCodesAreTurnedAwayWithoutAQuery() {
+        UserDetails organiser = user(ORGANISER, "ORGANISER");
+        checkInService.openDoors(eventId, organiser);
+
+        assertThat(checkInService.checkIn(eventId, "FORGED", organiser).isAdmitted()).isFalse();
+
+        verify(ticketRepository, never()).checkInById(any(), anyString());
+        verify(ticketRepository, never()).checkInByCode(any(), anyString());
+    }
+
+    @Test
+    void closedDoorsFallBackToTheDatabase() {
+        UserDetails organiser = user(ORGANISER, "ORGANISER");
+        when(ticketRepository.checkInByCode(eventId, "CODE-1")).thenReturn(1, 0);
+
+        assertThat(checkInService.checkIn(eventId, "CODE-1", organiser).isAdmitted()).isTrue();
+        assertThat(checkInService.checkIn(eventId, "CODE-1", organiser).isAdmitted()).isFalse();
+    }
+
+    private static UserDetails user(String email, String role) {
+        return User.withUsername(email).password("x").roles(role).build();
+    }
+}
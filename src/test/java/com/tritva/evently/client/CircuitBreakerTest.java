@@ -0,0 +1,77 @@
+package com.tritva.evently.client;
+
+import com.tritva.Evently.client.CircuitBreaker;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// State changes of the Daraja circuit breaker, driven by hand
+class CircuitBreakerTest {
+
+    private static final long OPEN_MILLIS = 50;
+
+    private final CircuitBreaker breaker = new CircuitBreaker("test", 2, OPEN_MILLIS);
+
+    @Test
+    void opensAfterConsecutiveFailuresOnly() {
+        breaker.onFailure(breaker.tryAcquire());
+        breaker.onSuccess(breaker.tryAcquire());
+        breaker.onFailure(breaker.tryAcquire());
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        breaker.onFailure(breaker.tryAcquire());
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquire()).isNull();
+    }
+
+    @Test
+    void onlyTheProbeClosesAHalfOpenCircuit() throws InterruptedException {
+        // Started while closed, answers long after the circuit opened
+        CircuitBreaker.Permit slowCall = breaker.tryAcquire();
+        trip();
+
+        Thread.sleep(OPEN_MILLIS + 20);
+        CircuitBreaker.Permit probe = breaker.tryAcquire();
+        assertThat(probe).isNotNull();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+
+        breaker.onSuccess(slowCall);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        // The probe is still out, so nobody else gets through
+        assertThat(breaker.tryAcquire()).isNull();
+
+        breaker.onSuccess(probe);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.tryAcquire()).isNotNull();
+    }
+
+    @Test
+    void failedProbeReopensAndAStaleProbeCannotFreeTheNextSlot() throws InterruptedException {
+        trip();
+        Thread.sleep(OPEN_MILLIS + 20);
+        CircuitBreaker.Permit firstProbe = breaker.tryAcquire();
+
+        breaker.onFailure(firstProbe);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquire()).isNull();
+
+        Thread.sleep(OPEN_MILLIS + 20);
+        CircuitBreaker.Permit secondProbe = breaker.tryAcquire();
+        assertThat(secondProbe).isNotNull();
+
+        // A late report for the first probe leaves the second one in charge
+        breaker.onIgnored(firstProbe);
+        breaker.onSuccess(firstProbe);
+        assertThat(breaker.tryAcquire()).isNull();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+
+        breaker.onIgnored(secondProbe);
+        assertThat(breaker.tryAcquire()).isNotNull();
+    }
+
+    private void trip() {
+        breaker.onFailure(breaker.tryAcquire());
+        breaker.onFailure(breaker.tryAcquire());
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+}
@@ -0,0 +1,99 @@
+package com.tritva.evently.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.tritva.Evently.client.DarajaClient;
+import com.tritva.Evently.config.DarajaClientConfig;
+import com.tritva.Evently.config.MpesaConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Runs DarajaClient against the local Daraja simulator
+class DarajaClientTest {
+
+    private DarajaSimulator simulator;
+    private SimpleMeterRegistry meterRegistry;
+    private DarajaClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        simulator = DarajaSimulator.start();
+
+        MpesaConfig config = new MpesaConfig();
+        config.setApiUrl(simulator.baseUrl());
+        config.setOauthUrl(simulator.baseUrl());
+        config.setConnectTimeoutMs(1000);
+        config.setReadTimeoutMs(500);
+
+        meterRegistry = new SimpleMeterRegistry();
+        client = new DarajaClient(new DarajaClientConfig().darajaRestClient(config), config, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        simulator.close();
+    }
+
+    @Test
+    void generatesTokenWithBasicAuth() {
+        JsonNode token = client.generateToken("key", "secret");
+
+        assertThat(token.get("access_token").asText()).isEqualTo(DarajaSimulator.TOKEN);
+        assertThat(token.get("expires_in").asLong()).isEqualTo(3599);
+        assertThat(simulator.lastAuthorization.get()).isEqualTo("Basic a2V5OnNlY3JldA==");
+    }
+
+    @Test
+    void sendsStkPushWithBearerToken() {
+        JsonNode response = client.stkPush(DarajaSimulator.TOKEN, Map.of("BusinessShortCode", "174379"));
+
+        assertThat(response.get("CheckoutRequestID").asText()).startsWith("ws_CO_");
+        assertThat(simulator.lastAuthorization.get()).isEqualTo("Bearer " + DarajaSimulator.TOKEN);
+        assertThat(simulator.lastBody.get()).contains("\"BusinessShortCode\":\"174379\"");
+        assertThat(meterRegistry.get("daraja.client.requests")
+                .tags("operation", "stk_push", "outcome", "SUCCESS").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void surfacesUnauthorized() {
+        assertThatThrownBy(() -> client.stkPush("expired", Map.of()))
+                .isInstanceOf(HttpClientErrorException.Unauthorized.class);
+        assertThat(meterRegistry.get("daraja.client.requests")
+                .tags("outcome", "CLIENT_ERROR").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void queriesStkStatus() {
+        String checkoutRequestId = client.stkPush(DarajaSimulator.TOKEN, Map.of()).get("CheckoutRequestID").asText();
+
+        // No answer from the buyer yet
+        assertThatThrownBy(() -> client.stkQuery(DarajaSimulator.TOKEN, Map.of("CheckoutRequestID", checkoutRequestId)))
+                .isInstanceOf(HttpServerErrorException.class);
+
+        simulator.settle(checkoutRequestId, "1032");
+        JsonNode result = client.stkQuery(DarajaSimulator.TOKEN, Map.of("CheckoutRequestID", checkoutRequestId));
+        assertThat(result.get("ResultCode").asText()).isEqualTo("1032");
+    }
+
+    @Test
+    void abandonsSlowResponsesAtTheReadTimeout() {
+        simulator.setResponseDelayMs(2000);
+        long start = System.nanoTime();
+
+        assertThatThrownBy(() -> client.stkPush(DarajaSimulator.TOKEN, Map.of()))
+                .isInstanceOf(ResourceAccessException.class);
+
+        assertThat((System.nanoTime() - start) / 1_000_000).isLessThan(1500);
+        assertThat(meterRegistry.get("daraja.client.in.flight").gauge().value()).isZero();
+    }
+}
@@ -0,0 +1,162 @@
+package com.tritva.evently.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.tritva.Evently.client.CircuitBreaker;
+import com.tritva.Evently.client.DarajaClient;
+import com.tritva.Evently.config.DarajaClientConfig;
+import com.tritva.Evently.config.MpesaConfig;
+import com.tritva.Evently.exception.PaymentsUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Failure injection against the local Daraja simulator: outages, slow responses and overload
+class DarajaResilienceTest {
+
+    private DarajaSimulator simulator;
+    private SimpleMeterRegistry meterRegistry;
+    private DarajaClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        simulator = DarajaSimulator.start();
+
+        MpesaConfig config = new MpesaConfig();
+        config.setApiUrl(simulator.baseUrl());
+        config.setOauthUrl(simulator.baseUrl());
+        config.setConnectTimeoutMs(1000);
+        config.setReadTimeoutMs(300);
+        config.setCircuitFailureThreshold(3);
+        config.setCircuitOpenMs(300);
+        config.setBulkheadMaxConcurrent(2);
+        config.setBulkheadMaxWaitMs(50);
+
+        meterRegistry = new SimpleMeterRegistry();
+        client = new DarajaClient(new DarajaClientConfig().darajaRestClient(config), config, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        simulator.close();
+    }
+
+    @Test
+    void opensAfterConsecutiveServerErrorsAndFailsFast() {
+        simulator.setFailureStatus(503);
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(this::push).isInstanceOf(HttpServerErrorException.class);
+        }
+        assertThat(client.circuitState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        int reached = simulator.requestCount();
+        assertThatThrownBy(this::push)
+                .isInstanceOf(PaymentsUnavailableException.class)
+                .satisfies(e -> assertThat(((PaymentsUnavailableException) e).getRetryAfterSeconds()).isPositive());
+        assertThatThrownBy(client::ensureAvailable).isInstanceOf(PaymentsUnavailableException.class);
+
+        // Refused without touching Daraja
+        assertThat(simulator.requestCount()).isEqualTo(reached);
+        assertThat(meterRegistry.get("daraja.circuit.state").gauge().value()).isEqualTo(2);
+        assertThat(meterRegistry.get("daraja.client.rejections").tag("reason", "circuit_open").counter().count())
+                .isEqualTo(2);
+    }
+
+    @Test
+    void timeoutsCountAsFailures() {
+        simulator.setResponseDelayMs(1000);
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(this::push).isInstanceOf(ResourceAccessException.class);
+        }
+        assertThat(client.circuitState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void successfulProbeClosesTheCircuit() throws InterruptedException {
+        trip();
+        simulator.setFailureStatus(0);
+        Thread.sleep(350);
+
+        assertThat(push().get("ResponseCode").asText()).isEqualTo("0");
+        assertThat(client.circuitState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(meterRegistry.get("daraja.circuit.state").gauge().value()).isZero();
+    }
+
+    @Test
+    void failedProbeReopensTheCircuit() throws InterruptedException {
+        trip();
+        Thread.sleep(350);
+
+        // One probe goes through, and its failure opens the circuit for another full wait
+        assertThatThrownBy(this::push).isInstanceOf(HttpServerErrorException.class);
+        assertThat(client.circuitState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThatThrownBy(this::push).isInstanceOf(PaymentsUnavailableException.class);
+    }
+
+    @Test
+    void pendingStkQueryDoesNotTripTheCircuit() {
+        for (int i = 0; i < 5; i++) {
+            assertThatThrownBy(() -> client.stkQuery(DarajaSimulator.TOKEN, Map.of("CheckoutRequestID", "ws_CO_unknown")))
+                    .isInstanceOf(HttpServerErrorException.class);
+        }
+        assertThat(client.circuitState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void bulkheadTurnsAwayCallersBeyondTheLimit() throws InterruptedException {
+        simulator.setResponseDelayMs(200);
+        List<Future<?>> calls = new ArrayList<>();
+        try (ExecutorService callers = Executors.newFixedThreadPool(6)) {
+            for (int i = 0; i < 6; i++) {
+                calls.add(callers.submit(this::push));
+            }
+        }
+
+        int succeeded = 0;
+        int rejected = 0;
+        for (Future<?> call : calls) {
+            try {
+                call.get();
+                succeeded++;
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(PaymentsUnavailableException.class);
+                rejected++;
+            }
+        }
+
+        // Only two threads were ever allowed to wait on Daraja
+        assertThat(succeeded).isEqualTo(2);
+        assertThat(rejected).isEqualTo(4);
+        assertThat(meterRegistry.get("daraja.client.rejections").tag("reason", "bulkhead_full").counter().count())
+                .isEqualTo(4);
+        assertThat(meterRegistry.get("daraja.bulkhead.available").gauge().value()).isEqualTo(2);
+        // Overload is not an outage
+        assertThat(client.circuitState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    private JsonNode push() {
+        return client.stkPush(DarajaSimulator.TOKEN, Map.of("BusinessShortCode", "174379"));
+    }
+
+    private void trip() {
+        simulator.setFailureStatus(500);
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(this::push).isInstanceOf(HttpServerErrorException.class);
+        }
+        assertThat(client.circuitState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+}
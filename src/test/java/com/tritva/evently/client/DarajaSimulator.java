@@ -0,0 +1,154 @@
+package com.tritva.evently.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Local stand-in for the Daraja endpoints the app calls: OAuth, STK push and
+ * STK Query. Outcomes of pushes are set by the test with {@link #settle}.
+ */
+public class DarajaSimulator implements AutoCloseable {
+
+    public static final String TOKEN = "sim-token";
+
+    private final HttpServer server;
+    // Handlers sleep for the response delay, so serve each request on its own thread
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicInteger checkouts = new AtomicInteger();
+    private final Map<String, String> results = new ConcurrentHashMap<>();
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private volatile long responseDelayMs;
+    // When non-zero every endpoint answers with this status, to simulate an outage
+    private volatile int failureStatus;
+
+    public final AtomicReference<String> lastAuthorization = new AtomicReference<>();
+    public final AtomicReference<String> lastBody = new AtomicReference<>();
+
+    private DarajaSimulator() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/oauth/v1/generate", exchange -> {
+            lastAuthorization.set(exchange.getRequestHeaders().getFirst("Authorization"));
+            if (failed(exchange)) {
+                return;
+            }
+            respond(exchange, 200, "{\"access_token\":\"" + TOKEN + "\",\"expires_in\":\"3599\"}");
+        });
+        server.createContext("/mpesa/stkpush/v1/processrequest", exchange -> {
+            if (authorise(exchange) != null) {
+                delay();
+                String checkoutRequestId = "ws_CO_" + checkouts.incrementAndGet();
+                respond(exchange, 200, "{\"ResponseCode\":\"0\",\"CheckoutRequestID\":\"" + checkoutRequestId
+                        + "\",\"MerchantRequestID\":\"m-" + checkoutRequestId + "\",\"ResponseDescription\":\"Success\"}");
+            }
+        });
+        server.createContext("/mpesa/stkpushquery/v1/query", exchange -> {
+            // This request's own body; lastBody may already belong to a concurrent one
+            String body = authorise(exchange);
+            if (body != null) {
+                JsonNode request = objectMapper.readTree(body);
+                String resultCode = results.get(request.path("CheckoutRequestID").asText());
+                if (resultCode == null) {
+                    respond(exchange, 500, "{\"errorCode\":\"500.001.1001\",\"errorMessage\":\"The transaction is being processed\"}");
+                } else {
+                    respond(exchange, 200, "{\"ResponseCode\":\"0\",\"ResultCode\":\"" + resultCode
+                            + "\",\"ResultDesc\":\"Simulated result " + resultCode + "\"}");
+                }
+            }
+        });
+    }
+
+    public static DarajaSimulator start() throws IOException {
+        DarajaSimulator simulator = new DarajaSimulator();
+        simulator.server.start();
+        return simulator;
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    // What STK Query reports for a checkout: "0" paid, "1032" cancelled, ...
+    public void settle(String checkoutRequestId, String resultCode) {
+        results.put(checkoutRequestId, resultCode);
+    }
+
+    public void setResponseDelayMs(long responseDelayMs) {
+        this.responseDelayMs = responseDelayMs;
+    }
+
+    public void setFailureStatus(int failureStatus) {
+        this.failureStatus = failureStatus;
+    }
+
+    // Requests that reached the simulator, including failed ones
+    public int requestCount() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    // The request body once the bearer token checks out, or null after answering with an error
+    private String authorise(HttpExchange exchange) throws IOException {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        lastAuthorization.set(authorization);
+        lastBody.set(body);
+        if (failed(exchange)) {
+            return null;
+        }
+        if (!("Bearer " + TOKEN).equals(authorization)) {
+            respond(exchange, 401, "{\"errorCode\":\"404.001.03\",\"errorMessage\":\"Invalid Access Token\"}");
+            return null;
+        }
+        return body;
+    }
+
+    private boolean failed(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        int status = failureStatus;
+        if (status == 0) {
+            return false;
+        }
+        delay();
+        respond(exchange, status, "{\"errorCode\":\"" + status + ".000\",\"errorMessage\":\"Simulated outage\"}");
+        return true;
+    }
+
+    private void delay() {
+        try {
+            Thread.sleep(responseDelayMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
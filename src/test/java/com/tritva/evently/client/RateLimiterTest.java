@@ -0,0 +1,67 @@
+package com.tritva.evently.client;
+
+import com.tritva.Evently.client.RateLimiter;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+// Slot arithmetic of the GCRA limiter, without sleeping on the reservations
+class RateLimiterTest {
+
+    private static final long INTERVAL_MS = 200;
+
+    @Test
+    void handsOutTheBurstAtOnce() {
+        RateLimiter limiter = new RateLimiter(5, 5);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(limiter.reserve(0)).isZero();
+        }
+        // Burst spent: the next permit is one interval away
+        assertThat(limiter.reserve(0)).isEqualTo(-1);
+        assertThat(millis(limiter.projectedWaitNanos())).isCloseTo(INTERVAL_MS, within(50L));
+    }
+
+    @Test
+    void queuedReservationsAreSpacedInArrivalOrder() {
+        RateLimiter limiter = new RateLimiter(5, 1);
+        long maxWait = TimeUnit.SECONDS.toNanos(10);
+
+        assertThat(limiter.reserve(maxWait)).isZero();
+        for (int i = 1; i <= 4; i++) {
+            assertThat(millis(limiter.reserve(maxWait))).isCloseTo(i * INTERVAL_MS, within(50L));
+        }
+    }
+
+    @Test
+    void refusesSlotsPastTheDeadlineWithoutTakingThem() {
+        RateLimiter limiter = new RateLimiter(5, 1);
+        limiter.reserve(0);
+        long projected = limiter.projectedWaitNanos();
+
+        assertThat(limiter.reserve(TimeUnit.MILLISECONDS.toNanos(INTERVAL_MS / 2))).isEqualTo(-1);
+
+        // The refused caller did not move the queue along
+        assertThat(millis(limiter.reserve(TimeUnit.SECONDS.toNanos(1)))).isCloseTo(millis(projected), within(50L));
+    }
+
+    @Test
+    void refillsWhileIdle() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(10, 2);
+        limiter.reserve(0);
+        limiter.reserve(0);
+        assertThat(limiter.reserve(0)).isEqualTo(-1);
+
+        Thread.sleep(250);
+
+        assertThat(limiter.reserve(0)).isZero();
+        assertThat(limiter.reserve(0)).isZero();
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
@@ -0,0 +1,108 @@
+package com.tritva.evently.client;
+
+import com.tritva.Evently.client.StkPushDispatcher;
+import com.tritva.Evently.config.MpesaConfig;
+import com.tritva.Evently.exception.PaymentsUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Pacing, queueing and load shedding of STK pushes, with the push itself stubbed out
+class StkPushDispatcherTest {
+
+    private MpesaConfig config;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        config = new MpesaConfig();
+        config.setShortCode("174379");
+        config.setPasskey("passkey");
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void sendsTheBurstWithoutWaiting() {
+        config.setStkPushPerSecond(5);
+        config.setStkPushBurst(5);
+        StkPushDispatcher dispatcher = new StkPushDispatcher(config, meterRegistry);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            assertThat(dispatcher.dispatch(MpesaConfig.ShortCode::getShortCode)).isEqualTo("174379");
+        }
+
+        assertThat((System.nanoTime() - start) / 1_000_000).isLessThan(100);
+    }
+
+    @Test
+    void queuedPushesGoInArrivalOrder() throws Exception {
+        config.setStkPushPerSecond(10);
+        config.setStkPushBurst(1);
+        config.setStkPushMaxWaitMs(2000);
+        StkPushDispatcher dispatcher = new StkPushDispatcher(config, meterRegistry);
+        List<Integer> sent = new CopyOnWriteArrayList<>();
+
+        List<Future<?>> pushes = new ArrayList<>();
+        try (ExecutorService buyers = Executors.newFixedThreadPool(5)) {
+            for (int i = 0; i < 5; i++) {
+                int buyer = i;
+                pushes.add(buyers.submit(() -> dispatcher.dispatch(shortCode -> sent.add(buyer))));
+                // Well inside the 100 ms slot spacing, so arrival order is unambiguous
+                Thread.sleep(20);
+            }
+            for (Future<?> push : pushes) {
+                push.get();
+            }
+        }
+
+        assertThat(sent).containsExactly(0, 1, 2, 3, 4);
+    }
+
+    @Test
+    void turnsAwayPushesThatWouldMissTheDeadline() throws InterruptedException {
+        config.setStkPushPerSecond(5);
+        config.setStkPushBurst(1);
+        config.setStkPushMaxWaitMs(100);
+        StkPushDispatcher dispatcher = new StkPushDispatcher(config, meterRegistry);
+        List<Integer> sent = new ArrayList<>();
+
+        dispatcher.dispatch(shortCode -> sent.add(1));
+        // The next slot is 200 ms out, past the 100 ms deadline: rejected before Daraja is called
+        assertThatThrownBy(() -> dispatcher.dispatch(shortCode -> sent.add(2)))
+                .isInstanceOf(PaymentsUnavailableException.class);
+
+        // The rejection did not use up the slot
+        Thread.sleep(150);
+        dispatcher.dispatch(shortCode -> sent.add(3));
+
+        assertThat(sent).containsExactly(1, 3);
+        assertThat(meterRegistry.get("daraja.client.rejections").tags("reason", "rate_limited").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void takesItsShareOfTheRateWhenSeveralNodesSendPushes() {
+        config.setStkPushPerSecond(10);
+        config.setStkPushBurst(4);
+        config.setStkPushMaxWaitMs(0);
+        config.setNodeCount(2);
+        StkPushDispatcher dispatcher = new StkPushDispatcher(config, meterRegistry);
+
+        // Half the burst on this node
+        dispatcher.dispatch(MpesaConfig.ShortCode::getShortCode);
+        dispatcher.dispatch(MpesaConfig.ShortCode::getShortCode);
+        assertThatThrownBy(() -> dispatcher.dispatch(MpesaConfig.ShortCode::getShortCode))
+                .isInstanceOf(PaymentsUnavailableException.class);
+    }
+}
@@ -0,0 +1,111 @@
+package com.tritva.evently.inventory;
+
+import com.tritva.Evently.model.entity.Event;
+import com.tritva.Evently.repository.EventRepository;
+import com.tritva.Evently.service.SeatInventoryService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Striped seat blocks for hot events, against a mocked event row
+class SeatInventoryServiceTest {
+
+    private static final int BLOCK_SIZE = 10;
+
+    private final UUID eventId = UUID.randomUUID();
+    private final Event event = Event.builder().id(eventId).hotSale(true).capacity(100).build();
+
+    private EventRepository eventRepository;
+    private SeatInventoryService inventory;
+
+    @BeforeEach
+    void setUp() {
+        eventRepository = mock(EventRepository.class);
+        inventory = new SeatInventoryService(eventRepository, mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(inventory, "blockSize", BLOCK_SIZE);
+        ReflectionTestUtils.setField(inventory, "stripeCount", 4);
+        ReflectionTestUtils.setField(inventory, "idleReturnMs", 60_000L);
+        when(eventRepository.findById(eventId)).thenReturn(Optional.of(event));
+    }
+
+    @Test
+    void gathersAPurchaseFromSeveralStripes() {
+        when(eventRepository.claimTickets(eventId, BLOCK_SIZE)).thenReturn(1);
+
+        // The block is spread 3/3/2/2, so the seven seats after the first three span stripes
+        assertThat(inventory.claim(event, 3)).isTrue();
+        assertThat(inventory.claim(event, 7)).isTrue();
+
+        verify(eventRepository, times(1)).claimTickets(eventId, BLOCK_SIZE);
+    }
+
+    @Test
+    void handsBackLeftoversAndClaimsFromTheRowWhenNoBlockIsLeft() {
+        when(eventRepository.claimTickets(eventId, BLOCK_SIZE)).thenReturn(1, 0);
+        when(eventRepository.claimTickets(eventId, 3)).thenReturn(1);
+        when(eventRepository.claimTickets(eventId, 1)).thenReturn(1);
+        inventory.claim(event, 8);
+
+        // Two seats left here are short of three: they go back to the row, which has the rest
+        assertThat(inventory.claim(event, 3)).isTrue();
+        verify(eventRepository).releaseTickets(eventId, 2);
+        verify(eventRepository).claimTickets(eventId, 3);
+
+        // From now on every claim and release goes to the row
+        assertThat(inventory.claim(event, 1)).isTrue();
+        inventory.release(event, 1);
+        verify(eventRepository).releaseTickets(eventId, 1);
+        verify(eventRepository, times(2)).claimTickets(eventId, BLOCK_SIZE);
+    }
+
+    @Test
+    void soldOutOnlyWhenTheRowIsShortToo() {
+        when(eventRepository.claimTickets(eventId, BLOCK_SIZE)).thenReturn(0);
+        when(eventRepository.claimTickets(eventId, 2)).thenReturn(0);
+
+        assertThat(inventory.claim(event, 2)).isFalse();
+    }
+
+    @Test
+    void reconcileReturnsTheBlockOnceTheRowRunsLow() {
+        when(eventRepository.claimTickets(eventId, BLOCK_SIZE)).thenReturn(1);
+        inventory.claim(event, 1);
+
+        // Another node took the rest of the row
+        when(eventRepository.findRemainingSeatsById(eventId)).thenReturn(0);
+        inventory.reconcile();
+
+        verify(eventRepository).releaseTickets(eventId, 9);
+        verify(eventRepository).repairTicketsSold(eventId);
+
+        when(eventRepository.claimTickets(eventId, 1)).thenReturn(1);
+        assertThat(inventory.claim(event, 1)).isTrue();
+        verify(eventRepository, times(1)).claimTickets(eventId, BLOCK_SIZE);
+    }
+
+    @Test
+    void reconcileKeepsTheBlockWhileTheRowHasMore() {
+        when(eventRepository.claimTickets(eventId, BLOCK_SIZE)).thenReturn(1);
+        when(eventRepository.findRemainingSeatsById(eventId)).thenReturn(50);
+        inventory.claim(event, 1);
+
+        inventory.reconcile();
+
+        verify(eventRepository, never()).releaseTickets(eq(eventId), anyInt());
+        assertThat(inventory.claim(event, 9)).isTrue();
+        verify(eventRepository, times(1)).claimTickets(eventId, BLOCK_SIZE);
+    }
+}
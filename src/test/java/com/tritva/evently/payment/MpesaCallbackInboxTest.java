@@ -0,0 +1,145 @@
+package com.tritva.evently.payment;
+
+import com.tritva.Evently.service.MpesaCallbackInbox;
+import com.tritva.Evently.service.MpesaService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+// Claiming, retrying and giving up on stored M-Pesa callbacks
+@SpringBootTest(properties = {
+        "app.payments.callback-inbox.claim-seconds=1",
+        "app.payments.callback-inbox.max-attempts=3",
+        // Drained by hand below
+        "app.payments.callback-inbox.drain-interval-ms=3600000"
+})
+class MpesaCallbackInboxTest {
+
+    @Autowired
+    private MpesaCallbackInbox inbox;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    private MpesaService mpesaService;
+
+    private String checkoutRequestId;
+
+    @BeforeEach
+    void setUp() {
+        checkoutRequestId = "ws_CO_inbox_" + UUID.randomUUID();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM mpesa_callback_inbox WHERE payload LIKE ?", "%" + checkoutRequestId + "%");
+    }
+
+    @Test
+    void identicalCallbacksAreStoredOnce() {
+        assertThat(inbox.accept(callback(0), null)).isTrue();
+        assertThat(inbox.accept(callback(0), null)).isFalse();
+
+        // Same checkout, different outcome: kept, not mistaken for a retry
+        assertThat(inbox.accept(callback(1032), null)).isTrue();
+        assertThat(rows()).isEqualTo(2);
+    }
+
+    @Test
+    void processedCallbackIsNotClaimedAgain() {
+        String body = callback(0);
+        inbox.accept(body, null);
+
+        inbox.drain();
+        inbox.drain();
+
+        verify(mpesaService, times(1)).processCallback(body, null);
+        assertThat(row().get("processed_at")).isNotNull();
+    }
+
+    @Test
+    void failedCallbackIsRetriedAfterItsClaimLapsesUntilMaxAttempts() throws Exception {
+        String body = callback(0);
+        doThrow(new RuntimeException("Payment not found")).when(mpesaService).processCallback(eq(body), isNull());
+        inbox.accept(body, null);
+
+        inbox.drain();
+        // Still claimed: a second drain right away leaves it alone
+        inbox.drain();
+        verify(mpesaService, times(1)).processCallback(body, null);
+        assertThat(row().get("attempts")).isEqualTo(1);
+        assertThat(row().get("last_error")).isEqualTo("Payment not found");
+
+        for (int attempt = 2; attempt <= 3; attempt++) {
+            Thread.sleep(1_100);
+            inbox.drain();
+            verify(mpesaService, times(attempt)).processCallback(body, null);
+        }
+
+        // Out of attempts: kept for inspection, never claimed again
+        Thread.sleep(1_100);
+        inbox.drain();
+        verify(mpesaService, times(3)).processCallback(body, null);
+        assertThat(row().get("attempts")).isEqualTo(3);
+        assertThat(row().get("processed_at")).isNull();
+    }
+
+    @Test
+    void oneFailingCallbackDoesNotHoldUpTheRest() {
+        String failing = callback(1);
+        String healthy = callback(0);
+        doThrow(new RuntimeException("boom")).when(mpesaService).processCallback(eq(failing), isNull());
+        inbox.accept(failing, null);
+        inbox.accept(healthy, null);
+
+        inbox.drain();
+
+        verify(mpesaService).processCallback(healthy, null);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM mpesa_callback_inbox WHERE payload = ? AND processed_at IS NOT NULL",
+                Integer.class, healthy)).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT attempts FROM mpesa_callback_inbox WHERE payload = ?", Integer.class, failing)).isEqualTo(1);
+    }
+
+    @Test
+    void handsTheCallbackUrlReferenceToTheWorker() {
+        String body = callback(0);
+        inbox.accept(body, "EV0123456789");
+
+        inbox.drain();
+
+        verify(mpesaService).processCallback(body, "EV0123456789");
+    }
+
+    private String callback(int resultCode) {
+        return """
+                {"Body":{"stkCallback":{"MerchantRequestID":"m-1","CheckoutRequestID":"%s",\
+                "ResultCode":%d,"ResultDesc":"result %d"}}}""".formatted(checkoutRequestId, resultCode, resultCode);
+    }
+
+    private int rows() {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM mpesa_callback_inbox WHERE payload LIKE ?",
+                Integer.class, "%" + checkoutRequestId + "%");
+    }
+
+    private Map<String, Object> row() {
+        return jdbcTemplate.queryForMap(
+                "SELECT attempts, last_error, processed_at FROM mpesa_callback_inbox WHERE payload LIKE ?",
+                "%" + checkoutRequestId + "%");
+    }
+}
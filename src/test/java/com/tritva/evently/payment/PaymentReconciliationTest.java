@@ -0,0 +1,176 @@
+package com.tritva.evently.payment;
+
+import com.tritva.Evently.model.Role;
+import com.tritva.Evently.model.Status;
+import com.tritva.Evently.model.entity.Category;
+import com.tritva.Evently.model.entity.Event;
+import com.tritva.Evently.model.entity.Payment;
+import com.tritva.Evently.model.entity.User;
+import com.tritva.Evently.repository.CategoryRepository;
+import com.tritva.Evently.repository.EventRepository;
+import com.tritva.Evently.repository.PaymentRepository;
+import com.tritva.Evently.repository.UserRepository;
+import com.tritva.Evently.service.PaymentReconciliationService;
+import com.tritva.evently.client.DarajaSimulator;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Settling pending payments through STK Query against the Daraja simulator
+@SpringBootTest(properties = {
+        "app.payments.reconciliation.min-age-seconds=0",
+        // Run by hand below
+        "app.payments.reconciliation.interval-ms=3600000"
+})
+class PaymentReconciliationTest {
+
+    private static final DarajaSimulator simulator = startSimulator();
+
+    @DynamicPropertySource
+    static void daraja(DynamicPropertyRegistry registry) {
+        registry.add("mpesa.api-url", simulator::baseUrl);
+        registry.add("mpesa.oauth-url", simulator::baseUrl);
+    }
+
+    @Autowired
+    private PaymentReconciliationService reconciliationService;
+    @Autowired
+    private PaymentRepository paymentRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private EventRepository eventRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User organiser;
+    private Category category;
+    private Event event;
+
+    @BeforeEach
+    void setUp() {
+        String suffix = UUID.randomUUID().toString();
+        organiser = userRepository.save(User.builder()
+                .email("organiser-" + suffix + "@test.local")
+                .password("x")
+                .fullName("Reconciliation Test Organiser")
+                .role(Role.ORGANISER)
+                .emailVerified(true)
+                .build());
+        category = categoryRepository.save(Category.builder().categoryName("reconciliation-test-" + suffix).build());
+        event = eventRepository.save(Event.builder()
+                .name("Reconciliation Test " + suffix)
+                .description("Reconciliation test")
+                .location("Nairobi")
+                .county("Nairobi")
+                .price(100)
+                .imageUrl("http://localhost/none.png")
+                .startDateTime(LocalDateTime.now().plusDays(1))
+                .endDateTime(LocalDateTime.now().plusDays(1).plusHours(4))
+                .organiser(organiser)
+                .category(category)
+                .capacity(10)
+                .build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM payments WHERE event_id = ?", event.getId());
+        eventRepository.deleteById(event.getId());
+        categoryRepository.deleteById(category.getId());
+        userRepository.deleteById(organiser.getId());
+    }
+
+    @AfterAll
+    static void stopSimulator() {
+        simulator.close();
+    }
+
+    @Test
+    void settlesOnlyFinalOutcomes() {
+        Payment paid = pendingPayment();
+        Payment cancelled = pendingPayment();
+        Payment wrongPin = pendingPayment();
+        Payment unknownCode = pendingPayment();
+        Payment unanswered = pendingPayment();
+
+        simulator.settle(paid.getMpesaCheckoutRequestId(), "0");
+        simulator.settle(cancelled.getMpesaCheckoutRequestId(), "1032");
+        simulator.settle(wrongPin.getMpesaCheckoutRequestId(), "2001");
+        simulator.settle(unknownCode.getMpesaCheckoutRequestId(), "4999");
+        // unanswered: STK Query keeps answering "being processed"
+
+        reconciliationService.reconcile();
+
+        assertThat(statusOf(paid)).isEqualTo(Status.COMPLETED);
+        assertThat(statusOf(cancelled)).isEqualTo(Status.FAILED);
+        assertThat(statusOf(wrongPin)).isEqualTo(Status.FAILED);
+        assertThat(statusOf(unknownCode)).isEqualTo(Status.PENDING);
+        assertThat(statusOf(unanswered)).isEqualTo(Status.PENDING);
+        assertThat(paymentRepository.findById(cancelled.getId()).orElseThrow().getMpesaResultDesc())
+                .isEqualTo("Simulated result 1032");
+    }
+
+    @Test
+    void leavesPaymentsSettledByACallbackAlone() {
+        Payment payment = pendingPayment();
+        simulator.settle(payment.getMpesaCheckoutRequestId(), "1032");
+
+        // The callback got there first
+        jdbcTemplate.update("UPDATE payments SET status = 'COMPLETED' WHERE id = ?", payment.getId());
+        reconciliationService.reconcile();
+
+        assertThat(statusOf(payment)).isEqualTo(Status.COMPLETED);
+    }
+
+    @Test
+    void skipsPaymentsWhosePaybillIsNoLongerConfigured() {
+        Payment payment = pendingPayment();
+        payment.setShortCode("600000");
+        paymentRepository.save(payment);
+        simulator.settle(payment.getMpesaCheckoutRequestId(), "0");
+
+        reconciliationService.reconcile();
+
+        // Not asked with another paybill's credentials, which would have found it paid
+        assertThat(statusOf(payment)).isEqualTo(Status.PENDING);
+    }
+
+    private Payment pendingPayment() {
+        return paymentRepository.save(Payment.builder()
+                .event(event)
+                .amount(100.0)
+                .status(Status.PENDING)
+                .mpesaCheckoutRequestId("ws_CO_reconcile_" + UUID.randomUUID())
+                .shortCode("174379")
+                .phoneNumber("254712345678")
+                .build());
+    }
+
+    private Status statusOf(Payment payment) {
+        return paymentRepository.findById(payment.getId()).orElseThrow().getStatus();
+    }
+
+    private static DarajaSimulator startSimulator() {
+        try {
+            return DarajaSimulator.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.tritva.evently.payment;
+
+import com.tritva.Evently.model.Role;
+import com.tritva.Evently.model.dto.MpesaPaymentResponseDto;
+import com.tritva.Evently.model.dto.TicketPurchaseRequestDto;
+import com.tritva.Evently.model.entity.Category;
+import com.tritva.Evently.model.entity.Event;
+import com.tritva.Evently.model.entity.User;
+import com.tritva.Evently.repository.CategoryRepository;
+import com.tritva.Evently.repository.EventRepository;
+import com.tritva.Evently.repository.UserRepository;
+import com.tritva.Evently.service.TicketPurchaseService;
+import com.tritva.evently.client.DarajaSimulator;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Purchases against a slow Daraja must not hold pooled connections while they wait
+@SpringBootTest(properties = {
+        "spring.datasource.hikari.maximum-pool-size=10",
+        // Room for every buyer in the Daraja bulkhead; this test is about the pool, not load shedding
+        "mpesa.bulkhead-max-concurrent=" + PurchaseConnectionUsageTest.PURCHASES,
+        // Likewise for the STK push rate limit: all thirty go at once instead of five a second
+        "mpesa.stk-push-per-second=" + PurchaseConnectionUsageTest.PURCHASES,
+        "mpesa.stk-push-burst=" + PurchaseConnectionUsageTest.PURCHASES
+})
+class PurchaseConnectionUsageTest {
+
+    static final int PURCHASES = 30;
+    private static final long DARAJA_DELAY_MS = 1500;
+
+    private static final DarajaSimulator simulator = startSimulator();
+
+    @DynamicPropertySource
+    static void daraja(DynamicPropertyRegistry registry) {
+        registry.add("mpesa.api-url", simulator::baseUrl);
+        registry.add("mpesa.oauth-url", simulator::baseUrl);
+        registry.add("mpesa.read-timeout-ms", () -> 10_000);
+    }
+
+    @Autowired
+    private TicketPurchaseService ticketPurchaseService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private EventRepository eventRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private DataSource dataSource;
+
+    private User organiser;
+    private Category category;
+    private Event event;
+
+    @BeforeEach
+    void setUp() {
+        String suffix = UUID.randomUUID().toString();
+        organiser = userRepository.save(User.builder()
+                .email("organiser-" + suffix + "@test.local")
+                .password("x")
+                .fullName("Pool Test Organiser")
+                .role(Role.ORGANISER)
+                .emailVerified(true)
+                .build());
+        category = categoryRepository.save(Category.builder().categoryName("pool-test-" + suffix).build());
+        event = eventRepository.save(Event.builder()
+                .name("Pool Test " + suffix)
+                .description("Connection pool test")
+                .location("Nairobi")
+                .county("Nairobi")
+                .price(100)
+                .imageUrl("http://localhost/none.png")
+                .startDateTime(LocalDateTime.now().plusDays(1))
+                .endDateTime(LocalDateTime.now().plusDays(1).plusHours(4))
+                .organiser(organiser)
+                .category(category)
+                .capacity(PURCHASES)
+                .build());
+        simulator.setResponseDelayMs(DARAJA_DELAY_MS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM payments WHERE event_id = ?", event.getId());
+        jdbcTemplate.update("DELETE FROM seat_holds WHERE event_id = ?", event.getId());
+        eventRepository.deleteById(event.getId());
+        categoryRepository.deleteById(category.getId());
+        userRepository.deleteById(organiser.getId());
+    }
+
+    @AfterAll
+    static void stopSimulator() {
+        simulator.close();
+    }
+
+    @Test
+    void poolStaysFlatWhileDarajaIsSlow() throws Exception {
+        HikariPoolMXBean pool = dataSource.unwrap(HikariDataSource.class).getHikariPoolMXBean();
+        AtomicInteger peakActive = new AtomicInteger();
+        AtomicInteger peakWaiting = new AtomicInteger();
+        AtomicBoolean sampling = new AtomicBoolean(true);
+
+        Thread sampler = Thread.ofPlatform().start(() -> {
+            while (sampling.get()) {
+                peakActive.accumulateAndGet(pool.getActiveConnections(), Math::max);
+                peakWaiting.accumulateAndGet(pool.getThreadsAwaitingConnection(), Math::max);
+                Thread.onSpinWait();
+            }
+        });
+
+        long start = System.nanoTime();
+        List<Future<MpesaPaymentResponseDto>> purchases = new ArrayList<>();
+        try (ExecutorService buyers = Executors.newFixedThreadPool(PURCHASES)) {
+            for (int i = 0; i < PURCHASES; i++) {
+                purchases.add(buyers.submit(() -> ticketPurchaseService.purchaseTicket(TicketPurchaseRequestDto.builder()
+                        .eventId(event.getId())
+                        .quantity(1)
+                        .phoneNumber("0712345678")
+                        .email("buyer@test.local")
+                        .build())));
+            }
+            for (Future<MpesaPaymentResponseDto> purchase : purchases) {
+                assertThat(purchase.get().getCheckoutRequestId()).startsWith("ws_CO_");
+            }
+        } finally {
+            sampling.set(false);
+            sampler.join();
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        // Thirty buyers all waiting on Daraja at once: nobody queued for a connection,
+        // and the pool never filled up
+        assertThat(peakActive.get()).isLessThan(10);
+        assertThat(peakWaiting.get()).isZero();
+        // Holding connections would serialise them into three waves of Daraja latency
+        assertThat(elapsedMs).isLessThan(2 * DARAJA_DELAY_MS + 1000);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM payments WHERE event_id = ? AND status = 'PENDING'", Integer.class, event.getId()))
+                .isEqualTo(PURCHASES);
+    }
+
+    private static DarajaSimulator startSimulator() {
+        try {
+            return DarajaSimulator.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
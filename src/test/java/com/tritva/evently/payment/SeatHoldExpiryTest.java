@@ -0,0 +1,202 @@
+package com.tritva.evently.payment;
+
+import com.tritva.Evently.model.HoldStatus;
+import com.tritva.Evently.model.Role;
+import com.tritva.Evently.model.Status;
+import com.tritva.Evently.model.entity.Category;
+import com.tritva.Evently.model.entity.Event;
+import com.tritva.Evently.model.entity.Payment;
+import com.tritva.Evently.model.entity.SeatHold;
+import com.tritva.Evently.model.entity.User;
+import com.tritva.Evently.repository.CategoryRepository;
+import com.tritva.Evently.repository.EventRepository;
+import com.tritva.Evently.repository.PaymentRepository;
+import com.tritva.Evently.repository.SeatHoldRepository;
+import com.tritva.Evently.repository.TicketRepository;
+import com.tritva.Evently.repository.UserRepository;
+import com.tritva.Evently.service.MpesaService;
+import com.tritva.Evently.service.SeatHoldService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Seat holds outliving their TTL while M-Pesa has not answered yet
+@SpringBootTest(properties = {
+        "app.holds.ttl-seconds=1",
+        // Swept by hand below
+        "app.holds.sweep-interval-ms=3600000"
+})
+class SeatHoldExpiryTest {
+
+    @Autowired
+    private SeatHoldService seatHoldService;
+    @Autowired
+    private MpesaService mpesaService;
+    @Autowired
+    private SeatHoldRepository seatHoldRepository;
+    @Autowired
+    private PaymentRepository paymentRepository;
+    @Autowired
+    private TicketRepository ticketRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private EventRepository eventRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private User organiser;
+    private Category category;
+    private Event event;
+
+    @BeforeEach
+    void setUp() {
+        String suffix = UUID.randomUUID().toString();
+        organiser = userRepository.save(User.builder()
+                .email("organiser-" + suffix + "@test.local")
+                .password("x")
+                .fullName("Hold Test Organiser")
+                .role(Role.ORGANISER)
+                .emailVerified(true)
+                .build());
+        category = categoryRepository.save(Category.builder().categoryName("hold-test-" + suffix).build());
+        event = eventRepository.save(Event.builder()
+                .name("Hold Test " + suffix)
+                .description("Seat hold expiry test")
+                .location("Nairobi")
+                .county("Nairobi")
+                .price(100)
+                .imageUrl("http://localhost/none.png")
+                .startDateTime(LocalDateTime.now().plusDays(1))
+                .endDateTime(LocalDateTime.now().plusDays(1).plusHours(4))
+                .organiser(organiser)
+                .category(category)
+                // One seat: a released hold would let someone else take it
+                .capacity(1)
+                .build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM tickets WHERE event_id = ?", event.getId());
+        jdbcTemplate.update("DELETE FROM payments WHERE event_id = ?", event.getId());
+        jdbcTemplate.update("DELETE FROM seat_holds WHERE event_id = ?", event.getId());
+        eventRepository.deleteById(event.getId());
+        categoryRepository.deleteById(category.getId());
+        userRepository.deleteById(organiser.getId());
+    }
+
+    @Test
+    void holdWithoutAPaymentIsFreedAfterItsTtl() throws InterruptedException {
+        SeatHold hold = seatHoldService.placeHold(event.getId(), 1);
+
+        Thread.sleep(1_100);
+        seatHoldService.sweepExpiredHolds();
+
+        assertThat(holdStatus(hold)).isEqualTo(HoldStatus.EXPIRED);
+        assertThat(ticketsSold()).isZero();
+    }
+
+    @Test
+    void lateCallbackAfterTheTtlStillGetsTheHeldSeat() throws Exception {
+        SeatHold hold = seatHoldService.placeHold(event.getId(), 1);
+        String checkoutRequestId = "ws_CO_hold_" + UUID.randomUUID();
+        Payment payment = paymentRepository.save(Payment.builder()
+                .event(event)
+                .user(organiser)
+                .amount(100.0)
+                .status(Status.PENDING)
+                .mpesaCheckoutRequestId(checkoutRequestId)
+                .phoneNumber("254712345678")
+                .buyerEmail("buyer@test.local")
+                .ticketQuantity(1)
+                .seatHoldId(hold.getId())
+                .build());
+        seatHoldService.attachCheckout(hold.getId(), checkoutRequestId);
+
+        Thread.sleep(1_100);
+        seatHoldService.sweepExpiredHolds();
+
+        // Still the buyer's while M-Pesa has not answered, so nobody else can buy it
+        assertThat(holdStatus(hold)).isEqualTo(HoldStatus.ACTIVE);
+        assertThatThrownBy(() -> seatHoldService.placeHold(event.getId(), 1))
+                .hasMessageContaining("sold out");
+
+        // As the callback inbox runs it
+        String callback = """
+                {"Body":{"stkCallback":{"MerchantRequestID":"m-1","CheckoutRequestID":"%s","ResultCode":0,\
+                "ResultDesc":"The service request is processed successfully.","CallbackMetadata":{"Item":[\
+                {"Name":"Amount","Value":100},{"Name":"MpesaReceiptNumber","Value":"RCPT%s"},\
+                {"Name":"PhoneNumber","Value":254712345678}]}}}}""".formatted(checkoutRequestId,
+                checkoutRequestId.substring(checkoutRequestId.length() - 6));
+        transactionTemplate.executeWithoutResult(status -> mpesaService.processCallback(callback, null));
+        awaitTickets(payment);
+
+        assertThat(ticketRepository.findByPaymentId(payment.getId())).hasSize(1);
+        assertThat(holdStatus(hold)).isEqualTo(HoldStatus.CONVERTED);
+        assertThat(ticketsSold()).isEqualTo(1);
+    }
+
+    @Test
+    void paymentForAnExpiredUnconfirmedPushTakesItsSeatsAgain() throws Exception {
+        String reference = "EV" + UUID.randomUUID().toString().substring(0, 10).toUpperCase();
+        // The push response was lost and reconciliation gave up on it, releasing its hold
+        Payment payment = paymentRepository.save(Payment.builder()
+                .event(event)
+                .user(organiser)
+                .amount(100.0)
+                .status(Status.FAILED)
+                .mpesaResultDesc("STK push was never confirmed")
+                .accountReference(reference)
+                .phoneNumber("254712345678")
+                .buyerEmail("buyer@test.local")
+                .ticketQuantity(1)
+                .build());
+
+        String checkoutRequestId = "ws_CO_late_" + UUID.randomUUID();
+        String callback = """
+                {"Body":{"stkCallback":{"MerchantRequestID":"m-2","CheckoutRequestID":"%s","ResultCode":0,\
+                "ResultDesc":"The service request is processed successfully.","CallbackMetadata":{"Item":[\
+                {"Name":"Amount","Value":100},{"Name":"MpesaReceiptNumber","Value":"RCPT%s"},\
+                {"Name":"PhoneNumber","Value":254712345678}]}}}}""".formatted(checkoutRequestId,
+                checkoutRequestId.substring(checkoutRequestId.length() - 6));
+        transactionTemplate.executeWithoutResult(status -> mpesaService.processCallback(callback, reference));
+        awaitTickets(payment);
+
+        Payment settled = paymentRepository.findById(payment.getId()).orElseThrow();
+        assertThat(settled.getStatus()).isEqualTo(Status.COMPLETED);
+        assertThat(settled.getMpesaCheckoutRequestId()).isEqualTo(checkoutRequestId);
+        assertThat(ticketRepository.findByPaymentId(payment.getId())).hasSize(1);
+        assertThat(ticketsSold()).isEqualTo(1);
+    }
+
+    // Tickets are issued asynchronously once the payment settles
+    private void awaitTickets(Payment payment) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!ticketRepository.existsByPaymentId(payment.getId()) && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+    }
+
+    private HoldStatus holdStatus(SeatHold hold) {
+        return seatHoldRepository.findById(hold.getId()).orElseThrow().getStatus();
+    }
+
+    private int ticketsSold() {
+        return jdbcTemplate.queryForObject("SELECT tickets_sold FROM events WHERE id = ?", Integer.class, event.getId());
+    }
+}
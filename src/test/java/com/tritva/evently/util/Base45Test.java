@@ -0,0 +1,51 @@
+package com.tritva.evently.util;
+
+import com.tritva.Evently.util.Base45;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// RFC 9285 examples plus round trips of every length up to a QR payload
+class Base45Test {
+
+    @Test
+    void matchesTheRfcExamples() {
+        assertThat(Base45.encode(ascii("AB"))).isEqualTo("BB8");
+        assertThat(Base45.encode(ascii("Hello!!"))).isEqualTo("%69 VD92EX0");
+        assertThat(Base45.encode(ascii("base-45"))).isEqualTo("UJCLQE7W581");
+        assertThat(Base45.decode("QED8WEX0")).isEqualTo(ascii("ietf!"));
+    }
+
+    @Test
+    void roundTripsArbitraryBytes() {
+        Random random = new Random(45);
+        for (int length = 0; length <= 200; length++) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+
+            String encoded = Base45.encode(bytes);
+
+            assertThat(encoded).matches("[0-9A-Z $%*+\\-./:]*");
+            assertThat(Base45.decode(encoded)).isEqualTo(bytes);
+        }
+    }
+
+    @Test
+    void rejectsInvalidInput() {
+        // A lone trailing character never comes out of the encoder
+        assertThatThrownBy(() -> Base45.decode("BB8A")).isInstanceOf(IllegalArgumentException.class);
+        // 44 + 44 * 45 + 44 * 2025 does not fit in two bytes
+        assertThatThrownBy(() -> Base45.decode(":::")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Base45.decode("::")).isInstanceOf(IllegalArgumentException.class);
+        // Lower case is outside the QR alphanumeric set
+        assertThatThrownBy(() -> Base45.decode("bb8")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
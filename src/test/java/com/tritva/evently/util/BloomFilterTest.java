@@ -0,0 +1,51 @@
+package com.tritva.evently.util;
+
+import com.tritva.Evently.util.BloomFilter;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Membership answers of the check-in index's Bloom filter
+class BloomFilterTest {
+
+    private static final int ENTRIES = 20_000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    @Test
+    void neverMissesAnAddedValue() {
+        BloomFilter filter = new BloomFilter(ENTRIES, FALSE_POSITIVE_RATE);
+        for (int i = 0; i < ENTRIES; i++) {
+            filter.add("CODE-" + i);
+        }
+
+        for (int i = 0; i < ENTRIES; i++) {
+            assertThat(filter.mightContain("CODE-" + i)).as("CODE-" + i).isTrue();
+        }
+    }
+
+    @Test
+    void keepsFalsePositivesNearTheTargetRate() {
+        BloomFilter filter = new BloomFilter(ENTRIES, FALSE_POSITIVE_RATE);
+        for (int i = 0; i < ENTRIES; i++) {
+            filter.add("CODE-" + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < ENTRIES; i++) {
+            if (filter.mightContain("FORGED-" + i)) {
+                falsePositives++;
+            }
+        }
+
+        // The hash is fixed, so this is deterministic; twice the target leaves room for variance
+        assertThat((double) falsePositives / ENTRIES).isLessThan(2 * FALSE_POSITIVE_RATE);
+    }
+
+    @Test
+    void emptyFilterContainsNothing() {
+        BloomFilter filter = new BloomFilter(0, FALSE_POSITIVE_RATE);
+
+        assertThat(filter.mightContain("")).isFalse();
+        assertThat(filter.mightContain("CODE-1")).isFalse();
+    }
+}
@@ -0,0 +1,118 @@
+package com.tritva.evently.util;
+
+import com.tritva.Evently.util.TicketCodeGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Ticket codes from hi/lo blocks, with the sequence stubbed out
+class TicketCodeGeneratorTest {
+
+    private static final String ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ";
+
+    private JdbcTemplate jdbcTemplate;
+    private TicketCodeGenerator generator;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        generator = new TicketCodeGenerator(jdbcTemplate);
+        ReflectionTestUtils.setField(generator, "nodeId", 33);
+        ReflectionTestUtils.setField(generator, "codeSecret", "test-secret");
+        ReflectionTestUtils.invokeMethod(generator, "init");
+    }
+
+    @Test
+    void blocksFollowTheSequenceStepEvenWhenItChanges() {
+        when(jdbcTemplate.queryForMap(anyString())).thenReturn(
+                block(1000, 1000),
+                // Another node lowered the step in between
+                block(1500, 500));
+
+        List<Long> sequences = new ArrayList<>();
+        for (int i = 0; i < 1500; i++) {
+            sequences.add(sequenceOf(generator.next().ticketNumber()));
+        }
+
+        assertThat(sequences.get(0)).isEqualTo(1);
+        assertThat(sequences.get(999)).isEqualTo(1000);
+        assertThat(sequences.get(1000)).isEqualTo(1001);
+        assertThat(sequences.get(1499)).isEqualTo(1500);
+        verify(jdbcTemplate, times(2)).queryForMap(anyString());
+    }
+
+    @Test
+    void codesAreUniqueAndCarryValidCheckCharacters() {
+        when(jdbcTemplate.queryForMap(anyString())).thenReturn(block(1000, 1000), block(2000, 1000));
+
+        Set<String> numbers = new HashSet<>();
+        Set<String> verificationCodes = new HashSet<>();
+        for (int i = 0; i < 2000; i++) {
+            TicketCodeGenerator.TicketCodes codes = generator.next();
+            assertThat(codes.ticketNumber()).startsWith("TKT-11-");
+            assertThat(codes.verificationCode()).startsWith("11");
+            assertThat(generator.hasValidCheckChar(codes.ticketNumber())).isTrue();
+            assertThat(generator.hasValidCheckChar(codes.verificationCode())).isTrue();
+            numbers.add(codes.ticketNumber());
+            verificationCodes.add(codes.verificationCode());
+        }
+
+        // The Feistel permutation is a bijection, so distinct sequences keep distinct codes
+        assertThat(numbers).hasSize(2000);
+        assertThat(verificationCodes).hasSize(2000);
+    }
+
+    @Test
+    void rejectsEverySingleCharacterTypo() {
+        when(jdbcTemplate.queryForMap(anyString())).thenReturn(block(1000, 1000));
+        String code = generator.next().verificationCode();
+
+        for (int i = 0; i < code.length(); i++) {
+            for (char replacement : ALPHABET.toCharArray()) {
+                if (replacement == code.charAt(i)) {
+                    continue;
+                }
+                String typo = code.substring(0, i) + replacement + code.substring(i + 1);
+                assertThat(generator.hasValidCheckChar(typo)).as(typo).isFalse();
+            }
+        }
+        assertThat(generator.hasValidCheckChar(code.replace('1', 'I'))).isFalse();
+        assertThat(generator.hasValidCheckChar(null)).isFalse();
+    }
+
+    @Test
+    void refusesBlocksPastTheCodeSpace() {
+        when(jdbcTemplate.queryForMap(anyString())).thenReturn(block((1L << 44) + 999, 1000));
+
+        assertThatThrownBy(generator::next).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static Map<String, Object> block(long last, long step) {
+        return Map.of("last", last, "increment_by", step);
+    }
+
+    // The ticket number carries the plain sequence in the nine characters before the check char
+    private static long sequenceOf(String ticketNumber) {
+        String body = ticketNumber.substring("TKT-11-".length(), ticketNumber.length() - 1);
+        long value = 0;
+        for (char c : body.toCharArray()) {
+            value = value * 32 + ALPHABET.indexOf(c);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,81 @@
+package com.tritva.evently.util;
+
+import com.tritva.Evently.util.Base45;
+import com.tritva.Evently.util.TicketPayloadSigner;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Ed25519 signing of QR payloads with a key pair made for the test
+class TicketPayloadSignerTest {
+
+    private final UUID eventId = UUID.randomUUID();
+    private final UUID ticketId = UUID.randomUUID();
+    private final Instant expiresAt = Instant.ofEpochSecond(1_900_000_000L);
+
+    @Test
+    void verifiesWhatItSigned() throws Exception {
+        KeyPair keys = keyPair();
+        TicketPayloadSigner signer = signer(keys, keys.getPublic().getEncoded());
+
+        String payload = signer.sign(eventId, ticketId, expiresAt, "11ABCDEFGHJ");
+
+        assertThat(payload).startsWith(TicketPayloadSigner.PREFIX);
+        assertThat(signer.verify(payload))
+                .isEqualTo(new TicketPayloadSigner.SignedTicket(eventId, ticketId, expiresAt, "11ABCDEFGHJ"));
+        assertThat(signer.publicKeyBase64()).isEqualTo(Base64.getEncoder().encodeToString(keys.getPublic().getEncoded()));
+    }
+
+    @Test
+    void rejectsTamperedAndForeignPayloads() throws Exception {
+        KeyPair keys = keyPair();
+        TicketPayloadSigner signer = signer(keys, keys.getPublic().getEncoded());
+        String payload = signer.sign(eventId, ticketId, expiresAt, "11ABCDEFGHJ");
+
+        // Someone else's ticket ID under the original signature
+        byte[] bytes = Base45.decode(payload.substring(TicketPayloadSigner.PREFIX.length()));
+        bytes[17] ^= 1;
+        assertThat(signer.verify(TicketPayloadSigner.PREFIX + Base45.encode(bytes))).isNull();
+
+        // Signed with another key
+        KeyPair other = keyPair();
+        TicketPayloadSigner forger = signer(other, other.getPublic().getEncoded());
+        assertThat(signer.verify(forger.sign(eventId, ticketId, expiresAt, "11ABCDEFGHJ"))).isNull();
+
+        assertThat(signer.verify(TicketPayloadSigner.PREFIX + "not base45")).isNull();
+        assertThat(signer.verify("11ABCDEFGHJ")).isNull();
+        assertThat(signer.verify(null)).isNull();
+    }
+
+    @Test
+    void refusesToStartWithAMismatchedKeyPair() throws Exception {
+        KeyPair keys = keyPair();
+        byte[] otherPublicKey = keyPair().getPublic().getEncoded();
+
+        assertThatThrownBy(() -> signer(keys, otherPublicKey))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("does not match");
+    }
+
+    private static TicketPayloadSigner signer(KeyPair keys, byte[] publicKey) {
+        TicketPayloadSigner signer = new TicketPayloadSigner();
+        ReflectionTestUtils.setField(signer, "privateKeyBase64",
+                Base64.getEncoder().encodeToString(keys.getPrivate().getEncoded()));
+        ReflectionTestUtils.setField(signer, "publicKeyBase64", Base64.getEncoder().encodeToString(publicKey));
+        ReflectionTestUtils.invokeMethod(signer, "init");
+        return signer;
+    }
+
+    private static KeyPair keyPair() throws NoSuchAlgorithmException {
+        return KeyPairGenerator.getInstance(TicketPayloadSigner.ALGORITHM).generateKeyPair();
+    }
+}
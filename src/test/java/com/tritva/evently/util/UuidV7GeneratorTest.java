@@ -0,0 +1,46 @@
+package com.tritva.evently.util;
+
+import com.tritva.Evently.util.UuidV7Generator;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// RFC 9562 layout and per-node ordering of generated IDs
+class UuidV7GeneratorTest {
+
+    @Test
+    void carriesVersionVariantAndTheCurrentMillisecond() {
+        long before = System.currentTimeMillis();
+        UUID id = UuidV7Generator.next();
+        long after = System.currentTimeMillis();
+
+        assertThat(id.version()).isEqualTo(7);
+        assertThat(id.variant()).isEqualTo(2);
+        // Counter carries from an earlier burst can run the timestamp a little ahead of the clock
+        assertThat(id.getMostSignificantBits() >>> 16).isBetween(before, after + 50);
+        // Round-trips through the text form the URLs use
+        assertThat(UUID.fromString(id.toString())).isEqualTo(id);
+    }
+
+    @Test
+    void increasesStrictlyWithinAMillisecond() {
+        UUID previous = UuidV7Generator.next();
+        // Enough to fill the 12-bit counter, so carries into the timestamp are covered too
+        for (int i = 0; i < 100_000; i++) {
+            UUID next = UuidV7Generator.next();
+            assertThat(Long.compareUnsigned(next.getMostSignificantBits(), previous.getMostSignificantBits()))
+                    .isPositive();
+            previous = next;
+        }
+    }
+
+    @Test
+    void randomPartDiffersBetweenIds() {
+        UUID first = UuidV7Generator.next();
+        UUID second = UuidV7Generator.next();
+
+        assertThat(first.getLeastSignificantBits()).isNotEqualTo(second.getLeastSignificantBits());
+    }
+}
@@ -0,0 +1,117 @@
+package com.tritva.evently.waitingroom;
+
+import com.tritva.Evently.exception.QueueAdmissionException;
+import com.tritva.Evently.model.dto.QueueStatusDto;
+import com.tritva.Evently.model.entity.Event;
+import com.tritva.Evently.repository.EventRepository;
+import com.tritva.Evently.service.WaitingRoomService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Queue tokens and admission pacing, with the scheduler ticks run by hand
+class WaitingRoomServiceTest {
+
+    private final UUID eventId = UUID.randomUUID();
+    private final UUID otherEventId = UUID.randomUUID();
+
+    private WaitingRoomService waitingRoom;
+
+    @BeforeEach
+    void setUp() {
+        EventRepository eventRepository = mock(EventRepository.class);
+        when(eventRepository.findById(eventId)).thenReturn(Optional.of(
+                Event.builder().id(eventId).name("Gala").admissionRatePerSecond(10).build()));
+        when(eventRepository.findById(otherEventId)).thenReturn(Optional.of(
+                Event.builder().id(otherEventId).name("Recital").admissionRatePerSecond(10).build()));
+
+        waitingRoom = new WaitingRoomService(eventRepository);
+        ReflectionTestUtils.setField(waitingRoom, "secret", "test-waiting-room-secret-0123456789abcdef");
+        ReflectionTestUtils.setField(waitingRoom, "flagCacheMs", 30_000L);
+        ReflectionTestUtils.setField(waitingRoom, "admissionWindowSeconds", 120L);
+        ReflectionTestUtils.setField(waitingRoom, "idleQueueMs", 600_000L);
+        ReflectionTestUtils.setField(waitingRoom, "nodeCount", 1);
+        ReflectionTestUtils.invokeMethod(waitingRoom, "checkSecret");
+    }
+
+    @Test
+    void admitsEachTokenOnceItsTurnComes() {
+        String token = waitingRoom.join(eventId).getToken();
+
+        assertThatThrownBy(() -> waitingRoom.admit(eventId, token))
+                .isInstanceOf(QueueAdmissionException.class)
+                .hasMessageContaining("not your turn");
+
+        waitingRoom.admitNextBatch();
+        assertThat(waitingRoom.status(token).isAdmitted()).isTrue();
+        waitingRoom.admit(eventId, token);
+        assertThatThrownBy(() -> waitingRoom.admit(eventId, token)).hasMessageContaining("already been used");
+
+        // A purchase that failed before payment gives the token back
+        waitingRoom.release(eventId, token);
+        waitingRoom.admit(eventId, token);
+    }
+
+    @Test
+    void refusesForgedAndMisdirectedTokens() {
+        String token = waitingRoom.join(eventId).getToken();
+        waitingRoom.join(otherEventId);
+        waitingRoom.admitNextBatch();
+
+        byte[] bytes = Base64.getUrlDecoder().decode(token);
+        // Jump the queue by editing the sequence number
+        bytes[31] ^= 0x10;
+        String forged = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        assertThatThrownBy(() -> waitingRoom.admit(eventId, forged)).hasMessage("Invalid queue token");
+        assertThatThrownBy(() -> waitingRoom.admit(eventId, "not-a-token")).hasMessage("Invalid queue token");
+        assertThatThrownBy(() -> waitingRoom.admit(otherEventId, token)).hasMessageContaining("different event");
+        assertThatThrownBy(() -> waitingRoom.admit(eventId, null)).hasMessageContaining("join the queue first");
+    }
+
+    @Test
+    void admitsThisNodesShareOfTheRate() {
+        // Four instances share 10 buyers a second: 2.5 each
+        ReflectionTestUtils.setField(waitingRoom, "nodeCount", 4);
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            tokens.add(waitingRoom.join(eventId).getToken());
+        }
+
+        waitingRoom.admitNextBatch();
+        assertThat(admitted(tokens)).isEqualTo(2);
+        waitingRoom.admitNextBatch();
+        assertThat(admitted(tokens)).isEqualTo(5);
+        assertThat(waitingRoom.status(tokens.get(9)).getPosition()).isEqualTo(5);
+    }
+
+    @Test
+    void refusesTokensFromAQueueThatClosed() {
+        ReflectionTestUtils.setField(waitingRoom, "idleQueueMs", -1L);
+        String token = waitingRoom.join(eventId).getToken();
+
+        // Everyone admitted and nobody joining: the queue closes
+        waitingRoom.admitNextBatch();
+        waitingRoom.admitNextBatch();
+        assertThatThrownBy(() -> waitingRoom.status(token)).hasMessageContaining("queue has closed");
+
+        // A new queue for the same event has a new generation
+        waitingRoom.join(eventId);
+        assertThatThrownBy(() -> waitingRoom.admit(eventId, token)).hasMessageContaining("queue has closed");
+    }
+
+    private long admitted(List<String> tokens) {
+        return tokens.stream().map(waitingRoom::status).filter(QueueStatusDto::isAdmitted).count();
+    }
+}